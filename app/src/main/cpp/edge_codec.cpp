@@ -0,0 +1,201 @@
+#include "edge_codec.hpp"
+
+#include <cstring>
+#include <limits>
+
+namespace {
+
+constexpr size_t TOO_LARGE = std::numeric_limits<size_t>::max();
+
+size_t bitmask_size(size_t pixels) {
+    return (pixels + 7) / 8;
+}
+
+// Appends `value` as LEB128 at out[pos] (out may be null: only count).
+// Returns the new position, or TOO_LARGE past `limit`.
+size_t put_varint(unsigned char* out, size_t pos, size_t limit, size_t value) {
+    do {
+        if (pos == limit) {
+            return TOO_LARGE;
+        }
+        unsigned char b = value & 0x7F;
+        value >>= 7;
+        if (out != nullptr) {
+            out[pos] = value != 0 ? (b | 0x80) : b;
+        }
+        pos++;
+    } while (value != 0);
+    return pos;
+}
+
+// Run-length codes bit(i) for i < pixels into out (or just counts with a
+// null out). Returns the payload size, or TOO_LARGE once it reaches `limit`.
+template <typename Bit>
+size_t encode_runs(size_t pixels, Bit bit, unsigned char* out, size_t limit) {
+    size_t pos = 0;
+    bool value = false;
+    size_t i = 0;
+    while (i < pixels) {
+        size_t start = i;
+        while (i < pixels && bit(i) == value) {
+            i++;
+        }
+        pos = put_varint(out, pos, limit, i - start);
+        if (pos == TOO_LARGE) {
+            return TOO_LARGE;
+        }
+        value = !value;
+    }
+    return pos;
+}
+
+// Calls apply(start, count) for every second run, starting with the second
+template <typename Apply>
+bool decode_runs(const unsigned char* in, size_t length, size_t pixels, Apply apply) {
+    size_t pos = 0;
+    size_t pixel = 0;
+    bool value = false;
+    while (pos < length) {
+        size_t run = 0;
+        int shift = 0;
+        unsigned char b;
+        do {
+            if (pos == length || shift > 28) {
+                return false;
+            }
+            b = in[pos++];
+            run |= static_cast<size_t>(b & 0x7F) << shift;
+            shift += 7;
+        } while (b & 0x80);
+
+        if (run > pixels - pixel) {
+            return false;
+        }
+        if (value) {
+            apply(pixel, run);
+        }
+        pixel += run;
+        value = !value;
+    }
+    return pixel == pixels;
+}
+
+void write_header(unsigned char* out, int encoding, int width, int height) {
+    out[0] = EDGE_FRAME_MAGIC;
+    out[1] = static_cast<unsigned char>(encoding);
+    out[2] = width & 0xFF;
+    out[3] = (width >> 8) & 0xFF;
+    out[4] = height & 0xFF;
+    out[5] = (height >> 8) & 0xFF;
+    out[6] = 0;
+    out[7] = 0;
+}
+
+} // namespace
+
+size_t edge_frame_max_size(int width, int height) {
+    return EDGE_FRAME_HEADER_SIZE + bitmask_size(static_cast<size_t>(width) * height);
+}
+
+size_t encode_edge_frame(
+        const unsigned char* mask,
+        const unsigned char* previous,
+        int width,
+        int height,
+        unsigned char* out) {
+
+    size_t pixels = static_cast<size_t>(width) * height;
+    unsigned char* payload = out + EDGE_FRAME_HEADER_SIZE;
+
+    auto edge = [mask](size_t i) { return mask[i] != 0; };
+    auto changed = [mask, previous](size_t i) { return (mask[i] != 0) != (previous[i] != 0); };
+
+    // Size both run codings first (cheap next to writing a bitmask that is
+    // then thrown away), then write only the winner
+    size_t best = bitmask_size(pixels);
+    int encoding = EDGE_ENCODING_BITMASK;
+
+    size_t rle = encode_runs(pixels, edge, nullptr, best);
+    if (rle != TOO_LARGE) {
+        best = rle;
+        encoding = EDGE_ENCODING_RLE;
+    }
+    if (previous != nullptr) {
+        size_t delta = encode_runs(pixels, changed, nullptr, best);
+        if (delta != TOO_LARGE) {
+            best = delta;
+            encoding = EDGE_ENCODING_DELTA;
+        }
+    }
+
+    switch (encoding) {
+        case EDGE_ENCODING_RLE:
+            encode_runs(pixels, edge, payload, best + 1);
+            break;
+        case EDGE_ENCODING_DELTA:
+            encode_runs(pixels, changed, payload, best + 1);
+            break;
+        default:
+            std::memset(payload, 0, best);
+            for (size_t i = 0; i < pixels; i++) {
+                if (mask[i] != 0) {
+                    payload[i >> 3] |= 1 << (i & 7);
+                }
+            }
+            break;
+    }
+
+    write_header(out, encoding, width, height);
+    return EDGE_FRAME_HEADER_SIZE + best;
+}
+
+bool edge_frame_size(const unsigned char* in, size_t length, int* width, int* height) {
+    if (length < EDGE_FRAME_HEADER_SIZE || in[0] != EDGE_FRAME_MAGIC || in[1] > EDGE_ENCODING_GRAY) {
+        return false;
+    }
+    *width = in[2] | (in[3] << 8);
+    *height = in[4] | (in[5] << 8);
+    return *width > 0 && *height > 0;
+}
+
+bool decode_edge_frame(const unsigned char* in, size_t length, unsigned char* out) {
+    int width = 0;
+    int height = 0;
+    if (!edge_frame_size(in, length, &width, &height)) {
+        return false;
+    }
+    size_t pixels = static_cast<size_t>(width) * height;
+    const unsigned char* payload = in + EDGE_FRAME_HEADER_SIZE;
+    size_t payloadLength = length - EDGE_FRAME_HEADER_SIZE;
+
+    switch (in[1]) {
+        case EDGE_ENCODING_BITMASK:
+            if (payloadLength != bitmask_size(pixels)) {
+                return false;
+            }
+            for (size_t i = 0; i < pixels; i++) {
+                out[i] = (payload[i >> 3] >> (i & 7)) & 1 ? 255 : 0;
+            }
+            return true;
+
+        case EDGE_ENCODING_GRAY:
+            if (payloadLength != pixels) {
+                return false;
+            }
+            std::memcpy(out, payload, pixels);
+            return true;
+
+        case EDGE_ENCODING_RLE:
+            std::memset(out, 0, pixels);
+            return decode_runs(payload, payloadLength, pixels, [out](size_t start, size_t count) {
+                std::memset(out + start, 255, count);
+            });
+
+        default:
+            return decode_runs(payload, payloadLength, pixels, [out](size_t start, size_t count) {
+                for (size_t i = start; i < start + count; i++) {
+                    out[i] = out[i] != 0 ? 0 : 255;
+                }
+            });
+    }
+}
@@ -0,0 +1,62 @@
+#pragma once
+
+#include <cstddef>
+#include <cstdint>
+
+// Compact storage/transport format for binary edge maps (Canny output),
+// mirrored by com.example.edgeviewer1.pipeline.SparseEdgeFrame, which also
+// encodes the frames EdgeStreamServer sends to web-viewer/.
+//
+// 8 byte header, little-endian:
+//   u8  'E'
+//   u8  encoding (EdgeEncoding)
+//   u16 width
+//   u16 height
+//   u16 sequence, low bits of the frame id (0 from encode_edge_frame())
+// then the payload. A pixel is an edge if its byte is non-zero; decoding
+// writes 0 or 255.
+//
+//   BITMASK  one bit per pixel, row-major, least significant bit first
+//   RLE      alternating run lengths of non-edge and edge pixels, starting
+//            with non-edge (possibly an empty run), unsigned LEB128 each
+//   DELTA    RLE runs of unchanged / changed pixels against the previous
+//            frame; the decoder toggles changed pixels in place
+//   GRAY     width * height raw bytes, for frames that are not binary
+//            (never written by encode_edge_frame())
+//
+// The encoder picks whichever is smallest, so a frame never takes more than
+// the header plus width * height / 8 bytes (115 KB for 720p, against 3.6 MB
+// of RGBA). Typical 3-10% edge density lands at a few tens of KB with RLE,
+// less with DELTA on a steady scene.
+enum EdgeEncoding {
+    EDGE_ENCODING_BITMASK = 0,
+    EDGE_ENCODING_RLE = 1,
+    EDGE_ENCODING_DELTA = 2,
+    EDGE_ENCODING_GRAY = 3,
+};
+
+constexpr size_t EDGE_FRAME_HEADER_SIZE = 8;
+constexpr uint8_t EDGE_FRAME_MAGIC = 'E';
+constexpr int EDGE_FRAME_MAX_DIMENSION = 0xFFFF;
+
+// Upper bound of encode_edge_frame() output for a width x height frame
+size_t edge_frame_max_size(int width, int height);
+
+// Encodes the width * height mask into `out` (edge_frame_max_size() bytes).
+// `previous` is the mask of the frame before, or nullptr to write a frame
+// that decodes on its own. Returns the encoded size.
+size_t encode_edge_frame(
+        const unsigned char* mask,
+        const unsigned char* previous,
+        int width,
+        int height,
+        unsigned char* out);
+
+// Reads width and height from a header. Returns false if `length` bytes do
+// not start with a valid header.
+bool edge_frame_size(const unsigned char* in, size_t length, int* width, int* height);
+
+// Decodes into `out` (width * height bytes). For a DELTA frame `out` must
+// still hold the previous decoded frame. Returns false for malformed input;
+// `out` may then be partially written.
+bool decode_edge_frame(const unsigned char* in, size_t length, unsigned char* out);
@@ -0,0 +1,257 @@
+#include "filter_graph.hpp"
+#include "opencv_processor.hpp"
+
+#include <opencv2/imgproc.hpp>
+
+#include <algorithm>
+#include <cmath>
+#include <cstdlib>
+
+using namespace cv;
+
+namespace {
+
+constexpr int MAX_STAGES = 32;
+
+// Implicit steps the compiler adds on its own
+constexpr int STEP_COPY = -1;         // drop the input row padding
+constexpr int SLOT_OUTPUT = 2;
+
+int scaled(int size, float scale) {
+    return std::max(1, static_cast<int>(std::lround(size * scale)));
+}
+
+bool needs_single_channel(int op) {
+    return op == FILTER_CANNY || op == FILTER_SOBEL || op == FILTER_THRESHOLD;
+}
+
+bool valid_stage(const FilterStage& stage) {
+    const float* p = stage.params;
+    switch (stage.op) {
+        case FILTER_GRAY:
+            return true;
+        case FILTER_BLUR: {
+            int ksize = static_cast<int>(p[0]);
+            return ksize >= 1 && ksize % 2 == 1 && p[1] >= 0;
+        }
+        case FILTER_CANNY:
+            return p[0] >= 0 && p[0] <= p[1];
+        case FILTER_SOBEL:
+            return p[0] > 0;
+        case FILTER_THRESHOLD:
+            return p[0] >= 0 && p[0] <= 255 && p[1] >= 0 && p[1] <= 2;
+        case FILTER_MORPHOLOGY:
+            return p[0] >= 0 && p[0] <= 3 && p[1] >= 1 && p[2] >= 1;
+        case FILTER_RESIZE:
+            return p[0] > 0 && p[0] <= 4;
+        default:
+            return false;
+    }
+}
+
+void ensure_bytes(Mat& storage, size_t bytes) {
+    if (storage.total() < bytes) {
+        storage.create(1, static_cast<int>(bytes), CV_8UC1);
+        count_scratch_allocation();
+    }
+}
+
+} // namespace
+
+bool FilterGraph::configure(const std::vector<FilterStage>& stages) {
+    stages_.clear();
+    kernels_.clear();
+    plan_.clear();
+    planFormat_ = -1;
+
+    if (stages.size() > MAX_STAGES) {
+        return false;
+    }
+    for (const FilterStage& stage : stages) {
+        if (!valid_stage(stage)) {
+            return false;
+        }
+    }
+
+    stages_ = stages;
+    kernels_.resize(stages_.size());
+    for (size_t i = 0; i < stages_.size(); i++) {
+        if (stages_[i].op == FILTER_MORPHOLOGY) {
+            int ksize = static_cast<int>(stages_[i].params[1]);
+            kernels_[i] = getStructuringElement(MORPH_RECT, Size(ksize, ksize));
+        }
+    }
+    return true;
+}
+
+void FilterGraph::output_size(int width, int height, int* outWidth, int* outHeight) const {
+    for (const FilterStage& stage : stages_) {
+        if (stage.op == FILTER_RESIZE) {
+            width = scaled(width, stage.params[0]);
+            height = scaled(height, stage.params[0]);
+        }
+    }
+    *outWidth = width;
+    *outHeight = height;
+}
+
+// Turns the stage list into the steps actually executed for this input.
+// Output sizes always follow output_size(): merging resizes changes how
+// often the image is resampled, never the size it ends up at.
+void FilterGraph::compile(int format, int width, int height) {
+    plan_.clear();
+
+    int channels = format == FILTER_INPUT_RGBA ? 4 : 1;
+    int w = width;
+    int h = height;
+
+    for (size_t i = 0; i < stages_.size(); i++) {
+        int op = stages_[i].op;
+
+        if (op == FILTER_GRAY && channels == 1) {
+            continue;                                       // already gray
+        }
+        if (needs_single_channel(op) && channels == 4) {
+            plan_.push_back({FILTER_GRAY, -1, w, h, CV_8UC1, 0});
+            channels = 1;
+        }
+        if (op == FILTER_RESIZE) {
+            w = scaled(w, stages_[i].params[0]);
+            h = scaled(h, stages_[i].params[0]);
+            if (!plan_.empty() && plan_.back().op == FILTER_RESIZE) {
+                plan_.back().width = w;                     // resample once
+                plan_.back().height = h;
+                continue;
+            }
+            if (plan_.empty() && w == width && h == height) {
+                continue;                                   // scale rounds to identity
+            }
+        }
+        if (op == FILTER_GRAY) {
+            channels = 1;
+        }
+        plan_.push_back({op, static_cast<int>(i), w, h, CV_MAKETYPE(CV_8U, channels), 0});
+    }
+
+    // The output is single-channel; a colour stream is converted last
+    if (channels == 4) {
+        plan_.push_back({FILTER_GRAY, -1, w, h, CV_8UC1, 0});
+    }
+    // Nothing to do for a strided luma input except packing it
+    if (plan_.empty()) {
+        plan_.push_back({STEP_COPY, -1, w, h, CV_8UC1, 0});
+    }
+
+    // Alternate intermediates between the two buffers. A threshold only
+    // looks at one pixel at a time, so it overwrites its own source.
+    size_t slotBytes[2] = {0, 0};
+    int previousSlot = -1;                                  // -1: the input
+    for (size_t i = 0; i < plan_.size(); i++) {
+        Step& step = plan_[i];
+        if (i + 1 == plan_.size()) {
+            step.slot = SLOT_OUTPUT;
+        } else if (step.op == FILTER_THRESHOLD && previousSlot >= 0) {
+            step.slot = previousSlot;
+        } else {
+            step.slot = previousSlot == 0 ? 1 : 0;
+        }
+        if (step.slot != SLOT_OUTPUT) {
+            size_t bytes = static_cast<size_t>(step.width) * step.height * CV_ELEM_SIZE(step.type);
+            slotBytes[step.slot] = std::max(slotBytes[step.slot], bytes);
+        }
+        previousSlot = step.slot;
+    }
+    ensure_bytes(pingPong_[0], slotBytes[0]);
+    ensure_bytes(pingPong_[1], slotBytes[1]);
+
+    planFormat_ = format;
+    planWidth_ = width;
+    planHeight_ = height;
+}
+
+void FilterGraph::run(
+        const unsigned char* input,
+        int format,
+        int rowStride,
+        int width,
+        int height,
+        unsigned char* output) {
+
+    if (format != planFormat_ || width != planWidth_ || height != planHeight_) {
+        compile(format, width, height);
+    }
+
+    Mat current = format == FILTER_INPUT_RGBA
+            ? Mat(height, width, CV_8UC4, (void*)input)
+            : Mat(height, width, CV_8UC1, (void*)input, rowStride);
+
+    for (const Step& step : plan_) {
+        unsigned char* data = step.slot == SLOT_OUTPUT ? output : pingPong_[step.slot].data;
+        // A header over preallocated memory: OpenCV's create() is a no-op
+        // when size and type match, so every stage writes in place
+        Mat dst(step.height, step.width, step.type, data);
+        apply(step, current, dst);
+        current = dst;
+    }
+}
+
+void FilterGraph::apply(const Step& step, const Mat& src, Mat& dst) {
+    const float* p = step.stage >= 0 ? stages_[step.stage].params : nullptr;
+
+    switch (step.op) {
+        case STEP_COPY:
+            src.copyTo(dst);
+            break;
+        case FILTER_GRAY:
+            cvtColor(src, dst, COLOR_RGBA2GRAY);
+            break;
+        case FILTER_BLUR: {
+            int ksize = static_cast<int>(p[0]);
+            GaussianBlur(src, dst, Size(ksize, ksize), p[1], p[1], BORDER_REPLICATE);
+            break;
+        }
+        case FILTER_CANNY:
+            detect_edges(src, dst, p[0], p[1]);
+            break;
+        case FILTER_SOBEL: {
+            if (dx_.size() != src.size()) {
+                dx_.create(src.size(), CV_16SC1);
+                dy_.create(src.size(), CV_16SC1);
+                count_scratch_allocation();
+            }
+            Sobel(src, dx_, CV_16S, 1, 0, 3, 1, 0, BORDER_REPLICATE);
+            Sobel(src, dy_, CV_16S, 0, 1, 3, 1, 0, BORDER_REPLICATE);
+            // |dx| + |dy| in one pass, instead of two convertScaleAbs and an add
+            float scale = p[0];
+            for (int y = 0; y < dst.rows; y++) {
+                const short* gx = dx_.ptr<short>(y);
+                const short* gy = dy_.ptr<short>(y);
+                unsigned char* out = dst.ptr<unsigned char>(y);
+                for (int x = 0; x < dst.cols; x++) {
+                    out[x] = saturate_cast<uchar>((std::abs(gx[x]) + std::abs(gy[x])) * scale);
+                }
+            }
+            break;
+        }
+        case FILTER_THRESHOLD: {
+            int mode = static_cast<int>(p[1]);
+            int type = mode == 1 ? THRESH_BINARY_INV
+                     : mode == 2 ? THRESH_BINARY | THRESH_OTSU
+                     : THRESH_BINARY;
+            threshold(src, dst, p[0], 255, type);
+            break;
+        }
+        case FILTER_MORPHOLOGY: {
+            static const int ops[] = {MORPH_ERODE, MORPH_DILATE, MORPH_OPEN, MORPH_CLOSE};
+            int op = ops[static_cast<int>(p[0])];
+            int iterations = static_cast<int>(p[2]);
+            morphologyEx(src, dst, op, kernels_[step.stage], Point(-1, -1), iterations, BORDER_REPLICATE);
+            break;
+        }
+        case FILTER_RESIZE: {
+            int interpolation = step.width < src.cols ? INTER_AREA : INTER_LINEAR;
+            resize(src, dst, dst.size(), 0, 0, interpolation);
+            break;
+        }
+    }
+}
@@ -0,0 +1,83 @@
+#pragma once
+
+#include <opencv2/core.hpp>
+
+#include <vector>
+
+// Stage opcodes and input formats, mirrored by com.example.edgeviewer1.jni.FilterGraph
+enum FilterOp {
+    FILTER_GRAY = 0,          // colour -> single channel
+    FILTER_BLUR = 1,          // p0 = kernel size (odd), p1 = sigma
+    FILTER_CANNY = 2,         // p0 = low threshold, p1 = high threshold
+    FILTER_SOBEL = 3,         // gradient magnitude |dx| + |dy|, p0 = scale
+    FILTER_THRESHOLD = 4,     // p0 = threshold, p1 = mode (0 binary, 1 inverted, 2 Otsu)
+    FILTER_MORPHOLOGY = 5,    // p0 = op (0 erode, 1 dilate, 2 open, 3 close), p1 = kernel size, p2 = iterations
+    FILTER_RESIZE = 6,        // p0 = scale factor
+};
+
+enum FilterInputFormat {
+    FILTER_INPUT_RGBA = 0,    // width * height * 4 bytes, tightly packed
+    FILTER_INPUT_LUMA = 1,    // single channel with a row stride
+};
+
+constexpr int FILTER_PARAMS_PER_STAGE = 4;
+
+struct FilterStage {
+    int op;
+    float params[FILTER_PARAMS_PER_STAGE];
+};
+
+// A chain of image operations that turns one camera frame into a
+// single-channel output in one call.
+//
+// The stage list is fixed at construction. The first run at a given input
+// size and format compiles it into a plan: stages that do nothing for that
+// input are dropped, adjacent resizes are merged, the first step reads the
+// input in place and the last step writes straight into the caller's output.
+// Intermediates live in two ping-pong Mats owned by the graph and are only
+// reallocated when the plan changes, so steady-state frames do not allocate.
+//
+// A graph is not thread-safe: run it from one thread at a time.
+class FilterGraph {
+public:
+    // Returns false and leaves the graph empty if any stage is malformed
+    bool configure(const std::vector<FilterStage>& stages);
+
+    // Size of the output produced for an input of the given size
+    void output_size(int width, int height, int* outWidth, int* outHeight) const;
+
+    // `output` must hold output_size() bytes
+    void run(
+            const unsigned char* input,
+            int format,
+            int rowStride,
+            int width,
+            int height,
+            unsigned char* output);
+
+private:
+    struct Step {
+        int op;
+        int stage;            // index into stages_, -1 for implicit steps
+        int width;            // output size and type of this step
+        int height;
+        int type;
+        int slot;             // 0/1 ping-pong buffer, or SLOT_OUTPUT for the last step
+    };
+
+    void compile(int format, int width, int height);
+    void apply(const Step& step, const cv::Mat& src, cv::Mat& dst);
+
+    std::vector<FilterStage> stages_;
+    std::vector<cv::Mat> kernels_;    // structuring element per morphology stage
+    std::vector<Step> plan_;
+
+    int planFormat_ = -1;
+    int planWidth_ = 0;
+    int planHeight_ = 0;
+
+    // Raw storage for intermediates; each step views it at its own size
+    cv::Mat pingPong_[2];
+    cv::Mat dx_;
+    cv::Mat dy_;
+};
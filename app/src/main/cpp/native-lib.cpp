@@ -1,5 +1,8 @@
 #include <jni.h>
+#include <opencv2/core.hpp>
 #include <vector>
+#include "edge_codec.hpp"
+#include "filter_graph.hpp"
 #include "opencv_processor.hpp"
 
 extern "C"
@@ -55,3 +58,587 @@ Java_com_example_edgeviewer1_jni_NativeBridge_processFrameToEdges(
                             reinterpret_cast<jbyte*>(outputBuf.data()));
     return result;
 }
+
+// Status codes, mirrored by NativeBridge.STATUS_*
+constexpr jint STATUS_OK = 0;
+constexpr jint STATUS_INVALID_SIZE = -1;          // non-positive size or stride < width
+constexpr jint STATUS_INPUT_SIZE_MISMATCH = -2;   // input does not hold the frame described
+constexpr jint STATUS_OUTPUT_TOO_SMALL = -3;
+constexpr jint STATUS_NOT_DIRECT = -4;            // null or heap-backed ByteBuffer
+constexpr jint STATUS_OUT_OF_MEMORY = -5;         // VM could not pin or copy an array
+constexpr jint STATUS_INVALID_GRAPH = -6;         // null filter graph handle or unknown format
+constexpr jint STATUS_MALFORMED_FRAME = -7;       // encoded edge frame failed to decode
+
+// Resolves the address of a direct buffer holding at least `required` bytes.
+// Returns STATUS_OK, STATUS_NOT_DIRECT, or `tooSmall` if the capacity is short.
+static jint resolve_direct(
+        JNIEnv* env,
+        jobject buffer,
+        jlong required,
+        jint tooSmall,
+        unsigned char** address) {
+    if (buffer == nullptr) {
+        return STATUS_NOT_DIRECT;
+    }
+    void* base = env->GetDirectBufferAddress(buffer);
+    if (base == nullptr) {
+        return STATUS_NOT_DIRECT;
+    }
+    if (env->GetDirectBufferCapacity(buffer) < required) {
+        return tooSmall;
+    }
+    *address = static_cast<unsigned char*>(base);
+    return STATUS_OK;
+}
+
+// Runs `process` on a Java RGBA input array, writing into a caller-owned
+// output array. Both arrays are pinned (or at worst copied by the VM) for the
+// duration of the call only; nothing is allocated on the Java heap.
+template <typename Process>
+static jint process_arrays(
+        JNIEnv* env,
+        jbyteArray inputRgba,
+        jbyteArray outputRgba,
+        jint width,
+        jint height,
+        Process process) {
+
+    if (width <= 0 || height <= 0) {
+        return STATUS_INVALID_SIZE;
+    }
+    if (inputRgba == nullptr) {
+        return STATUS_INPUT_SIZE_MISMATCH;
+    }
+    if (outputRgba == nullptr) {
+        return STATUS_OUTPUT_TOO_SMALL;
+    }
+
+    jlong length = static_cast<jlong>(width) * height * 4;
+    if (env->GetArrayLength(inputRgba) != length) {
+        return STATUS_INPUT_SIZE_MISMATCH;
+    }
+    if (env->GetArrayLength(outputRgba) < length) {
+        return STATUS_OUTPUT_TOO_SMALL;
+    }
+
+    // No JNI calls are allowed until both critical regions are released
+    auto* in = static_cast<unsigned char*>(env->GetPrimitiveArrayCritical(inputRgba, nullptr));
+    auto* out = static_cast<unsigned char*>(env->GetPrimitiveArrayCritical(outputRgba, nullptr));
+    if (in != nullptr && out != nullptr) {
+        process(in, out, width, height);
+    }
+    if (out != nullptr) {
+        env->ReleasePrimitiveArrayCritical(outputRgba, out, 0);
+    }
+    if (in != nullptr) {
+        env->ReleasePrimitiveArrayCritical(inputRgba, in, JNI_ABORT);
+    }
+    return (in != nullptr && out != nullptr) ? STATUS_OK : STATUS_OUT_OF_MEMORY;
+}
+
+extern "C"
+JNIEXPORT jint JNICALL
+Java_com_example_edgeviewer1_jni_NativeBridge_processFrameToGrayInto(
+        JNIEnv* env,
+        jobject /* this */,
+        jbyteArray inputRgba,
+        jbyteArray outputRgba,
+        jint width,
+        jint height) {
+
+    return process_arrays(env, inputRgba, outputRgba, width, height, process_frame_to_gray_direct);
+}
+
+extern "C"
+JNIEXPORT jint JNICALL
+Java_com_example_edgeviewer1_jni_NativeBridge_processFrameToEdgesInto(
+        JNIEnv* env,
+        jobject /* this */,
+        jbyteArray inputRgba,
+        jbyteArray outputRgba,
+        jint width,
+        jint height) {
+
+    return process_arrays(env, inputRgba, outputRgba, width, height, process_frame_to_edges_direct);
+}
+
+extern "C"
+JNIEXPORT jint JNICALL
+Java_com_example_edgeviewer1_jni_NativeBridge_processFrameToGrayDirect(
+        JNIEnv* env,
+        jobject /* this */,
+        jobject inputRgba,
+        jobject outputRgba,
+        jint width,
+        jint height) {
+
+    if (width <= 0 || height <= 0) {
+        return STATUS_INVALID_SIZE;
+    }
+
+    jlong pixels = static_cast<jlong>(width) * height;
+    unsigned char* in = nullptr;
+    unsigned char* out = nullptr;
+    jint status = resolve_direct(env, inputRgba, pixels * 4, STATUS_INPUT_SIZE_MISMATCH, &in);
+    if (status == STATUS_OK) {
+        status = resolve_direct(env, outputRgba, pixels * 4, STATUS_OUTPUT_TOO_SMALL, &out);
+    }
+    if (status != STATUS_OK) {
+        return status;
+    }
+
+    process_frame_to_gray_direct(in, out, width, height);
+    return STATUS_OK;
+}
+
+extern "C"
+JNIEXPORT jint JNICALL
+Java_com_example_edgeviewer1_jni_NativeBridge_processFrameToEdgesDirect(
+        JNIEnv* env,
+        jobject /* this */,
+        jobject inputRgba,
+        jobject outputRgba,
+        jint width,
+        jint height) {
+
+    if (width <= 0 || height <= 0) {
+        return STATUS_INVALID_SIZE;
+    }
+
+    jlong pixels = static_cast<jlong>(width) * height;
+    unsigned char* in = nullptr;
+    unsigned char* out = nullptr;
+    jint status = resolve_direct(env, inputRgba, pixels * 4, STATUS_INPUT_SIZE_MISMATCH, &in);
+    if (status == STATUS_OK) {
+        status = resolve_direct(env, outputRgba, pixels * 4, STATUS_OUTPUT_TOO_SMALL, &out);
+    }
+    if (status != STATUS_OK) {
+        return status;
+    }
+
+    process_frame_to_edges_direct(in, out, width, height);
+    return STATUS_OK;
+}
+
+extern "C"
+JNIEXPORT jint JNICALL
+Java_com_example_edgeviewer1_jni_NativeBridge_processLumaToGray(
+        JNIEnv* env,
+        jobject /* this */,
+        jobject inputY,
+        jint rowStride,
+        jobject outputRgba,
+        jint width,
+        jint height) {
+
+    if (width <= 0 || height <= 0 || rowStride < width) {
+        return STATUS_INVALID_SIZE;
+    }
+
+    // The last row of a plane is not padded out to the full stride
+    jlong inLength = static_cast<jlong>(rowStride) * (height - 1) + width;
+    jlong outLength = static_cast<jlong>(width) * height * 4;
+    unsigned char* in = nullptr;
+    unsigned char* out = nullptr;
+    jint status = resolve_direct(env, inputY, inLength, STATUS_INPUT_SIZE_MISMATCH, &in);
+    if (status == STATUS_OK) {
+        status = resolve_direct(env, outputRgba, outLength, STATUS_OUTPUT_TOO_SMALL, &out);
+    }
+    if (status != STATUS_OK) {
+        return status;
+    }
+
+    process_luma_to_gray_direct(in, rowStride, out, width, height);
+    return STATUS_OK;
+}
+
+extern "C"
+JNIEXPORT jint JNICALL
+Java_com_example_edgeviewer1_jni_NativeBridge_processLumaToEdges(
+        JNIEnv* env,
+        jobject /* this */,
+        jobject inputY,
+        jint rowStride,
+        jobject outputRgba,
+        jint width,
+        jint height) {
+
+    if (width <= 0 || height <= 0 || rowStride < width) {
+        return STATUS_INVALID_SIZE;
+    }
+
+    jlong inLength = static_cast<jlong>(rowStride) * (height - 1) + width;
+    jlong outLength = static_cast<jlong>(width) * height * 4;
+    unsigned char* in = nullptr;
+    unsigned char* out = nullptr;
+    jint status = resolve_direct(env, inputY, inLength, STATUS_INPUT_SIZE_MISMATCH, &in);
+    if (status == STATUS_OK) {
+        status = resolve_direct(env, outputRgba, outLength, STATUS_OUTPUT_TOO_SMALL, &out);
+    }
+    if (status != STATUS_OK) {
+        return status;
+    }
+
+    process_luma_to_edges_direct(in, rowStride, out, width, height);
+    return STATUS_OK;
+}
+
+extern "C"
+JNIEXPORT jlong JNICALL
+Java_com_example_edgeviewer1_jni_NativeBridge_getScratchAllocationCount(
+        JNIEnv* /* env */,
+        jobject /* this */) {
+    return static_cast<jlong>(scratch_allocation_count());
+}
+
+extern "C"
+JNIEXPORT jint JNICALL
+Java_com_example_edgeviewer1_jni_NativeBridge_processFrameToGrayMono(
+        JNIEnv* env,
+        jobject /* this */,
+        jobject inputRgba,
+        jobject outputGray,
+        jint width,
+        jint height) {
+
+    if (width <= 0 || height <= 0) {
+        return STATUS_INVALID_SIZE;
+    }
+
+    jlong pixels = static_cast<jlong>(width) * height;
+    unsigned char* in = nullptr;
+    unsigned char* out = nullptr;
+    jint status = resolve_direct(env, inputRgba, pixels * 4, STATUS_INPUT_SIZE_MISMATCH, &in);
+    if (status == STATUS_OK) {
+        status = resolve_direct(env, outputGray, pixels, STATUS_OUTPUT_TOO_SMALL, &out);
+    }
+    if (status != STATUS_OK) {
+        return status;
+    }
+
+    process_frame_to_gray_mono_direct(in, out, width, height);
+    return STATUS_OK;
+}
+
+extern "C"
+JNIEXPORT jint JNICALL
+Java_com_example_edgeviewer1_jni_NativeBridge_processFrameToEdgesMono(
+        JNIEnv* env,
+        jobject /* this */,
+        jobject inputRgba,
+        jobject outputEdges,
+        jint width,
+        jint height) {
+
+    if (width <= 0 || height <= 0) {
+        return STATUS_INVALID_SIZE;
+    }
+
+    jlong pixels = static_cast<jlong>(width) * height;
+    unsigned char* in = nullptr;
+    unsigned char* out = nullptr;
+    jint status = resolve_direct(env, inputRgba, pixels * 4, STATUS_INPUT_SIZE_MISMATCH, &in);
+    if (status == STATUS_OK) {
+        status = resolve_direct(env, outputEdges, pixels, STATUS_OUTPUT_TOO_SMALL, &out);
+    }
+    if (status != STATUS_OK) {
+        return status;
+    }
+
+    process_frame_to_edges_mono_direct(in, out, width, height);
+    return STATUS_OK;
+}
+
+extern "C"
+JNIEXPORT void JNICALL
+Java_com_example_edgeviewer1_jni_NativeBridge_setNumThreads(
+        JNIEnv* /* env */,
+        jobject /* this */,
+        jint threads) {
+    set_processing_threads(threads);
+}
+
+extern "C"
+JNIEXPORT jint JNICALL
+Java_com_example_edgeviewer1_jni_NativeBridge_getNumThreads(
+        JNIEnv* /* env */,
+        jobject /* this */) {
+    return get_processing_threads();
+}
+
+extern "C"
+JNIEXPORT jint JNICALL
+Java_com_example_edgeviewer1_jni_NativeBridge_processLumaToGrayMono(
+        JNIEnv* env,
+        jobject /* this */,
+        jobject inputY,
+        jint rowStride,
+        jobject outputGray,
+        jint width,
+        jint height) {
+
+    if (width <= 0 || height <= 0 || rowStride < width) {
+        return STATUS_INVALID_SIZE;
+    }
+
+    jlong inLength = static_cast<jlong>(rowStride) * (height - 1) + width;
+    jlong outLength = static_cast<jlong>(width) * height;
+    unsigned char* in = nullptr;
+    unsigned char* out = nullptr;
+    jint status = resolve_direct(env, inputY, inLength, STATUS_INPUT_SIZE_MISMATCH, &in);
+    if (status == STATUS_OK) {
+        status = resolve_direct(env, outputGray, outLength, STATUS_OUTPUT_TOO_SMALL, &out);
+    }
+    if (status != STATUS_OK) {
+        return status;
+    }
+
+    process_luma_to_gray_mono_direct(in, rowStride, out, width, height);
+    return STATUS_OK;
+}
+
+extern "C"
+JNIEXPORT jint JNICALL
+Java_com_example_edgeviewer1_jni_NativeBridge_processLumaToEdgesMono(
+        JNIEnv* env,
+        jobject /* this */,
+        jobject inputY,
+        jint rowStride,
+        jobject outputEdges,
+        jint width,
+        jint height) {
+
+    if (width <= 0 || height <= 0 || rowStride < width) {
+        return STATUS_INVALID_SIZE;
+    }
+
+    jlong inLength = static_cast<jlong>(rowStride) * (height - 1) + width;
+    jlong outLength = static_cast<jlong>(width) * height;
+    unsigned char* in = nullptr;
+    unsigned char* out = nullptr;
+    jint status = resolve_direct(env, inputY, inLength, STATUS_INPUT_SIZE_MISMATCH, &in);
+    if (status == STATUS_OK) {
+        status = resolve_direct(env, outputEdges, outLength, STATUS_OUTPUT_TOO_SMALL, &out);
+    }
+    if (status != STATUS_OK) {
+        return status;
+    }
+
+    process_luma_to_edges_mono_direct(in, rowStride, out, width, height);
+    return STATUS_OK;
+}
+
+extern "C"
+JNIEXPORT jlong JNICALL
+Java_com_example_edgeviewer1_jni_NativeBridge_createFilterGraph(
+        JNIEnv* env,
+        jobject /* this */,
+        jintArray ops,
+        jfloatArray params) {
+
+    if (ops == nullptr || params == nullptr) {
+        return 0;
+    }
+    jsize count = env->GetArrayLength(ops);
+    if (env->GetArrayLength(params) != count * FILTER_PARAMS_PER_STAGE) {
+        return 0;
+    }
+
+    std::vector<jint> opValues(count);
+    std::vector<jfloat> paramValues(count * FILTER_PARAMS_PER_STAGE);
+    env->GetIntArrayRegion(ops, 0, count, opValues.data());
+    env->GetFloatArrayRegion(params, 0, paramValues.size(), paramValues.data());
+
+    std::vector<FilterStage> stages(count);
+    for (jsize i = 0; i < count; i++) {
+        stages[i].op = opValues[i];
+        for (int j = 0; j < FILTER_PARAMS_PER_STAGE; j++) {
+            stages[i].params[j] = paramValues[i * FILTER_PARAMS_PER_STAGE + j];
+        }
+    }
+
+    auto* graph = new FilterGraph();
+    if (!graph->configure(stages)) {
+        delete graph;
+        return 0;
+    }
+    return reinterpret_cast<jlong>(graph);
+}
+
+extern "C"
+JNIEXPORT void JNICALL
+Java_com_example_edgeviewer1_jni_NativeBridge_releaseFilterGraph(
+        JNIEnv* /* env */,
+        jobject /* this */,
+        jlong handle) {
+    delete reinterpret_cast<FilterGraph*>(handle);
+}
+
+extern "C"
+JNIEXPORT jint JNICALL
+Java_com_example_edgeviewer1_jni_NativeBridge_getFilterGraphOutputSize(
+        JNIEnv* env,
+        jobject /* this */,
+        jlong handle,
+        jint width,
+        jint height,
+        jintArray outSize) {
+
+    if (handle == 0) {
+        return STATUS_INVALID_GRAPH;
+    }
+    if (width <= 0 || height <= 0) {
+        return STATUS_INVALID_SIZE;
+    }
+    if (outSize == nullptr || env->GetArrayLength(outSize) < 2) {
+        return STATUS_OUTPUT_TOO_SMALL;
+    }
+
+    jint size[2];
+    reinterpret_cast<FilterGraph*>(handle)->output_size(width, height, &size[0], &size[1]);
+    env->SetIntArrayRegion(outSize, 0, 2, size);
+    return STATUS_OK;
+}
+
+extern "C"
+JNIEXPORT jint JNICALL
+Java_com_example_edgeviewer1_jni_NativeBridge_runFilterGraph(
+        JNIEnv* env,
+        jobject /* this */,
+        jlong handle,
+        jobject input,
+        jint format,
+        jint rowStride,
+        jobject output,
+        jint width,
+        jint height) {
+
+    if (handle == 0 || (format != FILTER_INPUT_RGBA && format != FILTER_INPUT_LUMA)) {
+        return STATUS_INVALID_GRAPH;
+    }
+    if (width <= 0 || height <= 0) {
+        return STATUS_INVALID_SIZE;
+    }
+
+    jlong inLength;
+    if (format == FILTER_INPUT_RGBA) {
+        rowStride = width * 4;
+        inLength = static_cast<jlong>(width) * height * 4;
+    } else {
+        if (rowStride < width) {
+            return STATUS_INVALID_SIZE;
+        }
+        inLength = static_cast<jlong>(rowStride) * (height - 1) + width;
+    }
+
+    auto* graph = reinterpret_cast<FilterGraph*>(handle);
+    int outWidth = 0;
+    int outHeight = 0;
+    graph->output_size(width, height, &outWidth, &outHeight);
+
+    unsigned char* in = nullptr;
+    unsigned char* out = nullptr;
+    jint status = resolve_direct(env, input, inLength, STATUS_INPUT_SIZE_MISMATCH, &in);
+    if (status == STATUS_OK) {
+        status = resolve_direct(env, output, static_cast<jlong>(outWidth) * outHeight,
+                                STATUS_OUTPUT_TOO_SMALL, &out);
+    }
+    if (status != STATUS_OK) {
+        return status;
+    }
+
+    graph->run(in, format, rowStride, width, height, out);
+    return STATUS_OK;
+}
+
+extern "C"
+JNIEXPORT jint JNICALL
+Java_com_example_edgeviewer1_jni_NativeBridge_encodeEdgeFrame(
+        JNIEnv* env,
+        jobject /* this */,
+        jobject mask,
+        jobject previousMask,
+        jint width,
+        jint height,
+        jobject output) {
+
+    if (width <= 0 || height <= 0
+            || width > EDGE_FRAME_MAX_DIMENSION || height > EDGE_FRAME_MAX_DIMENSION) {
+        return STATUS_INVALID_SIZE;
+    }
+    jlong pixels = static_cast<jlong>(width) * height;
+
+    unsigned char* in = nullptr;
+    unsigned char* previous = nullptr;
+    unsigned char* out = nullptr;
+    jint status = resolve_direct(env, mask, pixels, STATUS_INPUT_SIZE_MISMATCH, &in);
+    if (status == STATUS_OK && previousMask != nullptr) {
+        status = resolve_direct(env, previousMask, pixels, STATUS_INPUT_SIZE_MISMATCH, &previous);
+    }
+    if (status == STATUS_OK) {
+        status = resolve_direct(env, output, static_cast<jlong>(edge_frame_max_size(width, height)),
+                                STATUS_OUTPUT_TOO_SMALL, &out);
+    }
+    if (status != STATUS_OK) {
+        return status;
+    }
+
+    return static_cast<jint>(encode_edge_frame(in, previous, width, height, out));
+}
+
+extern "C"
+JNIEXPORT jint JNICALL
+Java_com_example_edgeviewer1_jni_NativeBridge_decodeEdgeFrame(
+        JNIEnv* env,
+        jobject /* this */,
+        jobject encoded,
+        jint length,
+        jobject output) {
+
+    if (length < 0) {
+        return STATUS_INVALID_SIZE;
+    }
+    unsigned char* in = nullptr;
+    jint status = resolve_direct(env, encoded, length, STATUS_INPUT_SIZE_MISMATCH, &in);
+    if (status != STATUS_OK) {
+        return status;
+    }
+
+    int width = 0;
+    int height = 0;
+    if (!edge_frame_size(in, length, &width, &height)) {
+        return STATUS_MALFORMED_FRAME;
+    }
+    unsigned char* out = nullptr;
+    status = resolve_direct(env, output, static_cast<jlong>(width) * height,
+                            STATUS_OUTPUT_TOO_SMALL, &out);
+    if (status != STATUS_OK) {
+        return status;
+    }
+
+    return decode_edge_frame(in, length, out) ? STATUS_OK : STATUS_MALFORMED_FRAME;
+}
+
+extern "C"
+JNIEXPORT jint JNICALL
+Java_com_example_edgeviewer1_jni_NativeBridge_processMatToEdges(
+        JNIEnv* /* env */,
+        jobject /* this */,
+        jlong srcAddr,
+        jlong dstAddr) {
+
+    // Addresses are org.opencv.core.Mat.nativeObj, i.e. cv::Mat*
+    if (srcAddr == 0) {
+        return STATUS_INPUT_SIZE_MISMATCH;
+    }
+    if (dstAddr == 0) {
+        return STATUS_OUTPUT_TOO_SMALL;
+    }
+    const auto& src = *reinterpret_cast<const cv::Mat*>(srcAddr);
+    auto& dst = *reinterpret_cast<cv::Mat*>(dstAddr);
+    if (src.empty()) {
+        return STATUS_INVALID_SIZE;
+    }
+
+    return process_mat_to_edges(src, dst) ? STATUS_OK : STATUS_INPUT_SIZE_MISMATCH;
+}
@@ -1,44 +1,267 @@
 #include "opencv_processor.hpp"
 #include <opencv2/opencv.hpp>
 
+#include <algorithm>
+#include <atomic>
+
 using namespace cv;
 
+namespace {
+
+// Per-thread intermediates, sized on first use and only reallocated when the
+// frame size changes, so the steady-state hot path does not allocate.
+struct ScratchBuffers {
+    Mat gray;
+    Mat edges;
+    Mat dx;
+    Mat dy;
+};
+
+thread_local ScratchBuffers scratch;
+
+std::atomic<long long> scratchAllocations{0};
+
+Mat& ensure_scratch(Mat& mat, int width, int height, int type) {
+    if (mat.cols != width || mat.rows != height || mat.type() != type) {
+        mat.create(height, width, type);
+        count_scratch_allocation();
+    }
+    return mat;
+}
+
+// Canny thresholds can be tuned
+constexpr double CANNY_LOW = 80;
+constexpr double CANNY_HIGH = 150;
+
+std::atomic<int> processingThreads{1};
+
+// Computes the 3x3 Sobel derivatives for a band of horizontal stripes.
+// Each stripe is a row range (ROI) of the full image, and OpenCV filters read
+// the rows just outside an ROI from the parent Mat, so every stripe gets its
+// one-row halo for free and only true image edges use BORDER_REPLICATE. That
+// makes the result independent of how the frame is split.
+class SobelStripes : public ParallelLoopBody {
+public:
+    SobelStripes(const Mat& gray, Mat& dx, Mat& dy, int stripes)
+            : gray_(gray), dx_(dx), dy_(dy), stripes_(stripes) {}
+
+    void operator()(const Range& range) const override {
+        for (int i = range.start; i < range.end; i++) {
+            int rowStart = gray_.rows * i / stripes_;
+            int rowEnd = gray_.rows * (i + 1) / stripes_;
+            if (rowStart == rowEnd) continue;
+
+            Mat dxRows = dx_.rowRange(rowStart, rowEnd);
+            Mat dyRows = dy_.rowRange(rowStart, rowEnd);
+            Sobel(gray_.rowRange(rowStart, rowEnd), dxRows, CV_16S, 1, 0, 3, 1, 0, BORDER_REPLICATE);
+            Sobel(gray_.rowRange(rowStart, rowEnd), dyRows, CV_16S, 0, 1, 3, 1, 0, BORDER_REPLICATE);
+        }
+    }
+
+private:
+    const Mat& gray_;
+    Mat& dx_;
+    Mat& dy_;
+    int stripes_;
+};
+
+} // namespace
+
+// Canny on a single-channel image. The gradients are computed in parallel
+// stripes; non-maximum suppression and hysteresis then run on the whole
+// frame, because edge tracking may follow an edge across any stripe border.
+// With one thread the same code runs as a single stripe, so single- and
+// multi-threaded output are bit-identical.
+void detect_edges(const Mat& gray, Mat& edges, double lowThreshold, double highThreshold) {
+    int width = gray.cols;
+    int height = gray.rows;
+
+    Mat& dx = ensure_scratch(scratch.dx, width, height, CV_16SC1);
+    Mat& dy = ensure_scratch(scratch.dy, width, height, CV_16SC1);
+
+    int stripes = std::min(processingThreads.load(std::memory_order_relaxed), height);
+    stripes = std::max(stripes, 1);
+    parallel_for_(Range(0, stripes), SobelStripes(gray, dx, dy, stripes), stripes);
+
+    Canny(dx, dy, edges, lowThreshold, highThreshold);
+}
+
+void count_scratch_allocation() {
+    scratchAllocations.fetch_add(1, std::memory_order_relaxed);
+}
+
+void set_processing_threads(int threads) {
+    threads = std::max(threads, 1);
+    processingThreads.store(threads, std::memory_order_relaxed);
+    // Also caps OpenCV's internal pool, which Canny's own passes run on
+    setNumThreads(threads);
+}
+
+int get_processing_threads() {
+    return processingThreads.load(std::memory_order_relaxed);
+}
+
+long long scratch_allocation_count() {
+    return scratchAllocations.load(std::memory_order_relaxed);
+}
+
 void process_frame_to_gray(
         const unsigned char* inputRgba,
         int width,
         int height,
         std::vector<unsigned char>& outputRgba) {
 
+    outputRgba.resize(width * height * 4);
+    process_frame_to_gray_direct(inputRgba, outputRgba.data(), width, height);
+}
+
+void process_frame_to_edges(
+        const unsigned char* inputRgba,
+        int width,
+        int height,
+        std::vector<unsigned char>& outputRgba) {
+
+    outputRgba.resize(width * height * 4);
+    process_frame_to_edges_direct(inputRgba, outputRgba.data(), width, height);
+}
+
+void process_frame_to_gray_direct(
+        const unsigned char* inputRgba,
+        unsigned char* outputRgba,
+        int width,
+        int height) {
+
     Mat rgba(height, width, CV_8UC4, (void*)inputRgba);
+    // Wraps the caller's memory; cvtColor writes straight into it because
+    // size and type already match, so no extra copy is needed.
+    Mat grayRgba(height, width, CV_8UC4, outputRgba);
 
-    Mat gray;
+    Mat& gray = ensure_scratch(scratch.gray, width, height, CV_8UC1);
     cvtColor(rgba, gray, COLOR_RGBA2GRAY);
 
-    Mat grayRgba;
     cvtColor(gray, grayRgba, COLOR_GRAY2RGBA);
+}
 
-    outputRgba.resize(width * height * 4);
-    memcpy(outputRgba.data(), grayRgba.data, width * height * 4);
+void process_frame_to_edges_direct(
+        const unsigned char* inputRgba,
+        unsigned char* outputRgba,
+        int width,
+        int height) {
+
+    Mat rgba(height, width, CV_8UC4, (void*)inputRgba);
+    Mat edgesRgba(height, width, CV_8UC4, outputRgba);
+
+    Mat& gray = ensure_scratch(scratch.gray, width, height, CV_8UC1);
+    cvtColor(rgba, gray, COLOR_RGBA2GRAY);
+
+    Mat& edges = ensure_scratch(scratch.edges, width, height, CV_8UC1);
+    detect_edges(gray, edges, CANNY_LOW, CANNY_HIGH);
+
+    cvtColor(edges, edgesRgba, COLOR_GRAY2RGBA);
 }
 
-void process_frame_to_edges(
+void process_frame_to_gray_mono_direct(
         const unsigned char* inputRgba,
+        unsigned char* outputGray,
         int width,
-        int height,
-        std::vector<unsigned char>& outputRgba) {
+        int height) {
 
     Mat rgba(height, width, CV_8UC4, (void*)inputRgba);
+    Mat gray(height, width, CV_8UC1, outputGray);
 
-    Mat gray;
     cvtColor(rgba, gray, COLOR_RGBA2GRAY);
+}
 
-    Mat edges;
-    // Canny thresholds can be tuned
-    Canny(gray, edges, 80, 150);
+void process_frame_to_edges_mono_direct(
+        const unsigned char* inputRgba,
+        unsigned char* outputEdges,
+        int width,
+        int height) {
+
+    Mat rgba(height, width, CV_8UC4, (void*)inputRgba);
+    Mat edges(height, width, CV_8UC1, outputEdges);
+
+    Mat& gray = ensure_scratch(scratch.gray, width, height, CV_8UC1);
+    cvtColor(rgba, gray, COLOR_RGBA2GRAY);
+
+    detect_edges(gray, edges, CANNY_LOW, CANNY_HIGH);
+}
+
+void process_luma_to_gray_direct(
+        const unsigned char* inputY,
+        int rowStride,
+        unsigned char* outputRgba,
+        int width,
+        int height) {
+
+    // Y already is the gray image, so only the RGBA expansion remains
+    Mat luma(height, width, CV_8UC1, (void*)inputY, rowStride);
+    Mat grayRgba(height, width, CV_8UC4, outputRgba);
+
+    cvtColor(luma, grayRgba, COLOR_GRAY2RGBA);
+}
+
+void process_luma_to_edges_direct(
+        const unsigned char* inputY,
+        int rowStride,
+        unsigned char* outputRgba,
+        int width,
+        int height) {
+
+    Mat luma(height, width, CV_8UC1, (void*)inputY, rowStride);
+    Mat edgesRgba(height, width, CV_8UC4, outputRgba);
+
+    Mat& edges = ensure_scratch(scratch.edges, width, height, CV_8UC1);
+    detect_edges(luma, edges, CANNY_LOW, CANNY_HIGH);
 
-    Mat edgesRgba;
     cvtColor(edges, edgesRgba, COLOR_GRAY2RGBA);
+}
 
-    outputRgba.resize(width * height * 4);
-    memcpy(outputRgba.data(), edgesRgba.data, width * height * 4);
+void process_luma_to_gray_mono_direct(
+        const unsigned char* inputY,
+        int rowStride,
+        unsigned char* outputGray,
+        int width,
+        int height) {
+
+    Mat luma(height, width, CV_8UC1, (void*)inputY, rowStride);
+    Mat gray(height, width, CV_8UC1, outputGray);
+
+    // Luma is the gray image; only the row padding is dropped
+    luma.copyTo(gray);
+}
+
+void process_luma_to_edges_mono_direct(
+        const unsigned char* inputY,
+        int rowStride,
+        unsigned char* outputEdges,
+        int width,
+        int height) {
+
+    Mat luma(height, width, CV_8UC1, (void*)inputY, rowStride);
+    Mat edges(height, width, CV_8UC1, outputEdges);
+
+    detect_edges(luma, edges, CANNY_LOW, CANNY_HIGH);
+}
+
+bool process_mat_to_edges(const Mat& src, Mat& edges) {
+    if (src.empty() || src.depth() != CV_8U) {
+        return false;
+    }
+    edges.create(src.rows, src.cols, CV_8UC1);
+
+    switch (src.channels()) {
+        case 1:
+            detect_edges(src, edges, CANNY_LOW, CANNY_HIGH);
+            return true;
+        case 3:
+        case 4: {
+            Mat& gray = ensure_scratch(scratch.gray, src.cols, src.rows, CV_8UC1);
+            cvtColor(src, gray, src.channels() == 3 ? COLOR_BGR2GRAY : COLOR_BGRA2GRAY);
+            detect_edges(gray, edges, CANNY_LOW, CANNY_HIGH);
+            return true;
+        }
+        default:
+            return false;
+    }
 }
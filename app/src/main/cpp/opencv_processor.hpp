@@ -2,6 +2,10 @@
 
 #include <vector>
 
+namespace cv {
+class Mat;
+}
+
 void process_frame_to_gray(
         const unsigned char* inputRgba,
         int width,
@@ -13,3 +17,91 @@ void process_frame_to_edges(
         int width,
         int height,
         std::vector<unsigned char>& outputRgba);
+
+// Direct variants: read from / write to caller-owned memory of
+// width * height * 4 bytes each, without any intermediate copy.
+void process_frame_to_gray_direct(
+        const unsigned char* inputRgba,
+        unsigned char* outputRgba,
+        int width,
+        int height);
+
+void process_frame_to_edges_direct(
+        const unsigned char* inputRgba,
+        unsigned char* outputRgba,
+        int width,
+        int height);
+
+// Mono variants: RGBA input, single-channel output of width * height bytes.
+// The caller uploads it as a luminance texture instead of expanding to RGBA.
+void process_frame_to_gray_mono_direct(
+        const unsigned char* inputRgba,
+        unsigned char* outputGray,
+        int width,
+        int height);
+
+void process_frame_to_edges_mono_direct(
+        const unsigned char* inputRgba,
+        unsigned char* outputEdges,
+        int width,
+        int height);
+
+// Luma variants: input is a single-channel plane (e.g. the Y plane of a
+// YUV_420_888 image) with `rowStride` bytes per row; output is RGBA.
+void process_luma_to_gray_direct(
+        const unsigned char* inputY,
+        int rowStride,
+        unsigned char* outputRgba,
+        int width,
+        int height);
+
+void process_luma_to_edges_direct(
+        const unsigned char* inputY,
+        int rowStride,
+        unsigned char* outputRgba,
+        int width,
+        int height);
+
+// Number of times a per-thread scratch Mat had to be (re)allocated.
+// Stays constant once every processing thread has seen the current size.
+long long scratch_allocation_count();
+
+// Number of worker threads used for edge detection (and OpenCV's own pool).
+// Output does not depend on this value.
+void set_processing_threads(int threads);
+
+int get_processing_threads();
+
+// Luma to single-channel output: the strided plane is read in place and the
+// result is packed into width * height bytes, with no RGBA stage at all.
+void process_luma_to_gray_mono_direct(
+        const unsigned char* inputY,
+        int rowStride,
+        unsigned char* outputGray,
+        int width,
+        int height);
+
+void process_luma_to_edges_mono_direct(
+        const unsigned char* inputY,
+        int rowStride,
+        unsigned char* outputEdges,
+        int width,
+        int height);
+
+// Same edges as the frame functions above, for an OpenCV Mat as decoded by
+// VideoCapture: 8-bit gray, BGR or BGRA. `edges` is (re)created as a
+// single-channel Mat of the same size; reusing it across calls avoids
+// allocating. Returns false for any other input type.
+bool process_mat_to_edges(const cv::Mat& src, cv::Mat& edges);
+
+// Canny on a single-channel 8-bit image, using the striped gradient pass
+// configured by set_processing_threads(). `edges` may wrap caller memory.
+void detect_edges(
+        const cv::Mat& gray,
+        cv::Mat& edges,
+        double lowThreshold,
+        double highThreshold);
+
+// Adds one to scratch_allocation_count(); for code outside this file that
+// keeps its own reusable intermediates.
+void count_scratch_allocation();
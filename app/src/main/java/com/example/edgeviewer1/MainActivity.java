@@ -3,11 +3,15 @@ package com.example.edgeviewer1;
 import android.Manifest;
 import android.content.pm.PackageManager;
 import android.graphics.Bitmap;
+import android.media.Image;
 import android.os.Build;
 import android.os.Bundle;
+import android.os.SystemClock;
+import android.util.Log;
 import android.view.TextureView;
 import android.view.View;
 import android.widget.Button;
+import android.widget.TextView;
 
 import androidx.activity.ComponentActivity;
 import androidx.annotation.NonNull;
@@ -16,17 +20,37 @@ import androidx.core.content.ContextCompat;
 
 import com.example.edgeviewer1.camera.CameraController;
 import com.example.edgeviewer1.camera.FrameListener;
+import com.example.edgeviewer1.camera.StreamConfigSelector;
 import com.example.edgeviewer1.gl.GLView;
+import com.example.edgeviewer1.jni.FilterGraph;
 import com.example.edgeviewer1.jni.NativeBridge;
+import com.example.edgeviewer1.pipeline.Frame;
+import com.example.edgeviewer1.pipeline.FrameMailbox;
+import com.example.edgeviewer1.pipeline.FramePool;
+import com.example.edgeviewer1.pipeline.FrameProcessor;
+import com.example.edgeviewer1.pipeline.FrameTracer;
+import com.example.edgeviewer1.pipeline.ScaleGovernor;
+import com.example.edgeviewer1.record.RecordingConfig;
+import com.example.edgeviewer1.record.VideoRecorder;
+import com.example.edgeviewer1.stream.EdgeStreamServer;
 
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
 import java.nio.ByteBuffer;
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
 
-public class MainActivity extends ComponentActivity implements FrameListener {
+public class MainActivity extends ComponentActivity
+        implements FrameListener, FrameProcessor.Callback {
 
     // Mode enum
     private enum ViewMode {
         NORMAL,
         GRAY,
+        SOBEL,
         EDGE
     }
 
@@ -34,32 +58,188 @@ public class MainActivity extends ComponentActivity implements FrameListener {
     private GLView glView;
     private CameraController cameraController;
 
-    private ViewMode currentMode = ViewMode.NORMAL;
+    // Written on the UI thread, read on the camera and processing threads
+    private volatile ViewMode currentMode = ViewMode.NORMAL;
+
+    // Whether Image timestamps share the tracer's clock, see onTimestampSourceChosen()
+    private volatile boolean realtimeSensorTimestamps = false;
+
+    // Direct buffers handed to native code; reused until the frame size changes.
+    // Separate pools because strided input and packed output differ in size.
+    private final FramePool inputPool = new FramePool(3);
+    private final FramePool outputPool = new FramePool(2);
+
+    // Keep only the freshest frame: a slow device shows fewer but current frames
+    private final FrameProcessor frameProcessor = new FrameProcessor(
+            FrameMailbox.Policy.DROP_OLDEST,
+            1,
+            inputPool,
+            this
+    );
+
+    private static final String TAG = "MainActivity";
 
     private static final int CAMERA_PERMISSION_REQUEST_CODE = 1001;
 
+    // true: the camera renders only into GLView, which draws the preview and
+    // computes gray and edges in shaders. false: TextureView preview plus
+    // ImageReader frames through the native filter graphs, ScaleGovernor and
+    // the stream server. Switched with the pipeline button and remembered;
+    // forced off when GLView reports the GPU effects unavailable. UI thread.
+    private static final String PREF_GPU_PROCESSING = "gpu_processing";
+    private boolean gpuProcessing = true;
+    private boolean gpuParityChecked = false;
+    private boolean resumed = false;
+    private Button pipelineButton;
+
+    // ~10 s of frames at 30 fps
+    private final FrameTracer frameTracer = new FrameTracer(300);
+    private final AtomicLong nextFrameId = new AtomicLong();
+
+    // On big.LITTLE parts roughly the big cluster; more threads mostly
+    // land on little cores and add scheduling noise instead of speed
+    private static final int PROCESSING_THREADS =
+            Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+
+    // Native processing chain per mode; NORMAL has none and EDGE uses
+    // edgeGraphs. A new effect is a new graph here, not a new JNI function.
+    private final EnumMap<ViewMode, FilterGraph> modeGraphs = new EnumMap<>(ViewMode.class);
+
+    // Edge detection runs on a downscaled frame when the device cannot keep
+    // up at full size; GLView scales the smaller result back up on the GPU
+    private static final float[] EDGE_SCALES = {1f, 0.75f, 0.5f};
+    // Shared with the GPU edge shaders, see GLView.setEdgeThreshold()
+    private static final int CANNY_LOW = 80;
+    private static final int CANNY_HIGH = 150;
+    private static final long EDGE_BUDGET_NS = 1_000_000_000L / 30;
+    private final FilterGraph[] edgeGraphs = new FilterGraph[EDGE_SCALES.length];
+    private final ScaleGovernor edgeGovernor = new ScaleGovernor(EDGE_SCALES, EDGE_BUDGET_NS);
+    // The governor belongs to the processing thread, which resets it on its
+    // next frame; times measured before a mode switch say nothing about after
+    private volatile boolean edgeGovernorResetPending = false;
+
+    // Processed gray/edge frames for web-viewer; only the native path feeds
+    // it, GPU processing keeps frames on the GPU. The server has no
+    // authentication, so streaming is opt-in with the stream button: USB
+    // listens on loopback only (viewers use adb forward), LAN on every
+    // interface. Not remembered, every start is OFF. UI thread.
+    private enum StreamAccess {
+        OFF,
+        USB,
+        LAN
+    }
+
+    private StreamAccess streamAccess = StreamAccess.OFF;
+    private Button streamButton;
+    private TextView streamText;
+    // null while not streaming; read by the processing thread
+    private volatile EdgeStreamServer streamServer = null;
+
+    // Records what GLView shows through the hardware encoder; UI thread only
+    private static final int MAX_RECORDING_SIDE = 1280;
+    private VideoRecorder recorder = null;
+    private Button recordButton;
+
+    // Displayed frame rate, from GLView's paced draws; the window is GL thread only
+    private TextView fpsText;
+    private long fpsWindowStartNs = 0;
+    private int fpsWindowFrames = 0;
+
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_main);
 
+        NativeBridge.setNumThreads(PROCESSING_THREADS);
+
+        modeGraphs.put(ViewMode.GRAY, new FilterGraph.Builder()
+                .gray()
+                .build());
+        // Same |dx| + |dy| / 8 scale as the GPU gradient pass
+        modeGraphs.put(ViewMode.SOBEL, new FilterGraph.Builder()
+                .gray()
+                .sobel(1f / 8f)
+                .build());
+        for (int i = 0; i < EDGE_SCALES.length; i++) {
+            FilterGraph.Builder edges = new FilterGraph.Builder().gray();
+            if (EDGE_SCALES[i] != 1f) {
+                // After gray, so an RGBA frame is resampled as one channel
+                edges.resize(EDGE_SCALES[i]);
+            }
+            edgeGraphs[i] = edges.canny(CANNY_LOW, CANNY_HIGH).build();
+        }
+
         textureView = findViewById(R.id.textureView);
         glView = findViewById(R.id.glView);
+        // The shaders have no hysteresis; the low threshold keeps the same
+        // weak edges Canny can reach
+        glView.setEdgeThreshold(CANNY_LOW / (8f * 255f));
         Button toggleButton = findViewById(R.id.toggleModeBtn);
+        recordButton = findViewById(R.id.recordBtn);
+        pipelineButton = findViewById(R.id.pipelineBtn);
+        fpsText = findViewById(R.id.fpsText);
+        streamButton = findViewById(R.id.streamBtn);
+        streamText = findViewById(R.id.streamText);
+        glView.setPresentationListener(this::onFramePresented);
 
-        // 3-mode cycle: NORMAL → GRAY → EDGE → NORMAL
+        gpuProcessing = getPreferences(MODE_PRIVATE).getBoolean(PREF_GPU_PROCESSING, true);
+        pipelineButton.setOnClickListener(v -> setGpuProcessing(!gpuProcessing));
+        glView.setGpuUnavailableListener(() -> {
+            if (gpuProcessing) {
+                Log.w(TAG, "GPU processing unavailable, falling back to native");
+                setGpuProcessing(false);
+            }
+        });
+
+        // OFF → USB → LAN → OFF
+        streamButton.setOnClickListener(v -> {
+            switch (streamAccess) {
+                case OFF:
+                    streamAccess = StreamAccess.USB;
+                    break;
+                case USB:
+                    streamAccess = StreamAccess.LAN;
+                    break;
+                case LAN:
+                    streamAccess = StreamAccess.OFF;
+                    break;
+            }
+            updateStreamServer();
+        });
+
+        recordButton.setOnClickListener(v -> {
+            if (recorder == null) {
+                startRecording();
+            } else {
+                stopRecording();
+            }
+        });
+
+        glView.setFrameTracer(frameTracer);
+
+        // Long press dumps per-stage latency and a Perfetto/Chrome trace
+        toggleButton.setOnLongClickListener(v -> {
+            exportFrameTrace();
+            return true;
+        });
+
+        // 4-mode cycle: NORMAL → GRAY → SOBEL → EDGE → NORMAL
         toggleButton.setOnClickListener(v -> {
             switch (currentMode) {
                 case NORMAL:
                     currentMode = ViewMode.GRAY;
                     break;
                 case GRAY:
+                    currentMode = ViewMode.SOBEL;
+                    break;
+                case SOBEL:
                     currentMode = ViewMode.EDGE;
                     break;
                 case EDGE:
                     currentMode = ViewMode.NORMAL;
                     break;
             }
+            edgeGovernorResetPending = true;
 
             switch (currentMode) {
                 case NORMAL:
@@ -68,22 +248,19 @@ public class MainActivity extends ComponentActivity implements FrameListener {
                 case GRAY:
                     toggleButton.setText("Mode: Gray");
                     break;
+                case SOBEL:
+                    toggleButton.setText("Mode: Sobel");
+                    break;
                 case EDGE:
                     toggleButton.setText("Mode: Edge");
                     break;
             }
 
-            switch (currentMode) {
-                case NORMAL:
-                    glView.setVisibility(View.GONE);
-                    break;
-                case GRAY:
-                case EDGE:
-                    glView.setVisibility(View.VISIBLE);
-                    break;
-            }
+            applyViewMode();
         });
 
+        applyViewMode();
+
         if (hasCameraPermission()) {
             initCameraController();
         } else {
@@ -92,7 +269,20 @@ public class MainActivity extends ComponentActivity implements FrameListener {
     }
 
     private void initCameraController() {
-        cameraController = new CameraController(this, textureView, this);
+        if (gpuProcessing) {
+            // Camera → GLView's texture only: one render path, one layer
+            cameraController = new CameraController(this, this);
+            glView.setCameraTextureListener(cameraController::setGpuSurfaceTexture);
+        } else {
+            cameraController = new CameraController(
+                    this,
+                    textureView,
+                    this,
+                    CameraController.AcquisitionMode.IMAGE_READER
+            );
+        }
+        // Processing is budgeted for 720p; ScaleGovernor handles slower devices
+        cameraController.setPreviewPolicy(StreamConfigSelector.Policy.MAX_FPS, 1280 * 720);
     }
 
     private boolean hasCameraPermission() {
@@ -128,9 +318,137 @@ public class MainActivity extends ComponentActivity implements FrameListener {
         }
     }
 
+    // Shows currentMode through the active pipeline
+    private void applyViewMode() {
+        pipelineButton.setText(gpuProcessing ? "GPU" : "CPU");
+
+        if (gpuProcessing) {
+            // GLView draws every mode, including the plain preview
+            textureView.setVisibility(View.GONE);
+            glView.setVisibility(View.VISIBLE);
+            applyGpuEffect();
+            return;
+        }
+
+        // Native frames arrive through updateLuminanceFrame()
+        glView.setGpuEffect(GLView.GPU_EFFECT_NONE);
+        textureView.setVisibility(View.VISIBLE);
+        glView.setVisibility(currentMode == ViewMode.NORMAL ? View.GONE : View.VISIBLE);
+    }
+
+    // Moves the camera to the other pipeline; the choice is kept for the
+    // next start
+    private void setGpuProcessing(boolean enabled) {
+        if (enabled == gpuProcessing) return;
+        gpuProcessing = enabled;
+        getPreferences(MODE_PRIVATE).edit().putBoolean(PREF_GPU_PROCESSING, enabled).apply();
+        edgeGovernorResetPending = true;
+
+        if (cameraController != null) {
+            if (resumed) {
+                cameraController.onPause();
+            }
+            // Neither surface may reopen the old controller's camera
+            glView.setCameraTextureListener(null);
+            textureView.setSurfaceTextureListener(null);
+            cameraController = null;
+        }
+
+        applyViewMode();
+
+        updateStreamServer();
+        if (hasCameraPermission()) {
+            initCameraController();
+            if (resumed) {
+                cameraController.onResume();
+            }
+        }
+    }
+
+    // Runs the stream server only while resumed on the native pipeline with
+    // streaming switched on, and shows where viewers connect
+    private void updateStreamServer() {
+        boolean wanted = resumed && !gpuProcessing && streamAccess != StreamAccess.OFF;
+        boolean lan = streamAccess == StreamAccess.LAN;
+
+        EdgeStreamServer server = streamServer;
+        if (server != null && (!wanted || server.isLanAccess() != lan)) {
+            streamServer = null;
+            server.stop();
+            server = null;
+        }
+        if (wanted && server == null) {
+            server = new EdgeStreamServer(EdgeStreamServer.DEFAULT_PORT, lan);
+            try {
+                server.start();
+                streamServer = server;
+                Log.i(TAG, "Streaming processed frames at " + server.getUrl());
+            } catch (IOException e) {
+                Log.w(TAG, "Stream server not started: " + e.getMessage());
+                server = null;
+            }
+        }
+
+        switch (streamAccess) {
+            case OFF:
+                streamButton.setText("Stream: Off");
+                break;
+            case USB:
+                streamButton.setText("Stream: USB");
+                break;
+            case LAN:
+                streamButton.setText("Stream: LAN");
+                break;
+        }
+
+        if (streamAccess == StreamAccess.OFF) {
+            streamText.setVisibility(View.GONE);
+            return;
+        }
+        if (server != null) {
+            String url = server.getUrl();
+            streamText.setText(url != null
+                    ? "Streaming " + url
+                    : "Streaming on port " + server.getPort() + ", no LAN address");
+        } else if (gpuProcessing) {
+            streamText.setText("Streaming needs the CPU pipeline");
+        } else {
+            streamText.setText("Stream not started");
+        }
+        streamText.setVisibility(View.VISIBLE);
+    }
+
+    private void applyGpuEffect() {
+        ViewMode mode = currentMode;
+        int effect = mode == ViewMode.GRAY ? GLView.GPU_EFFECT_GRAY
+                : mode == ViewMode.SOBEL ? GLView.GPU_EFFECT_SOBEL
+                : mode == ViewMode.EDGE ? GLView.GPU_EFFECT_EDGES
+                : GLView.GPU_EFFECT_CAMERA;
+        glView.setGpuEffect(effect);
+
+        // Check the shaders against the native Canny once per run
+        if (effect == GLView.GPU_EFFECT_EDGES && !gpuParityChecked) {
+            gpuParityChecked = true;
+            glView.requestParityCheck((mismatched, edgePixels, withinTolerance) -> {
+                String result = "GPU edge parity: " + mismatched + " of " + edgePixels + " edge pixels differ";
+                if (withinTolerance) {
+                    Log.i(TAG, result);
+                } else {
+                    Log.w(TAG, result + ", outside tolerance");
+                }
+            });
+        }
+    }
+
     @Override
     protected void onResume() {
         super.onResume();
+        resumed = true;
+        // Processing thread is stopped until start(), so this is safe here
+        edgeGovernor.reset();
+        edgeGovernorResetPending = false;
+        frameProcessor.start();
+        updateStreamServer();
         if (cameraController != null) {
             cameraController.onResume();
         }
@@ -138,13 +456,40 @@ public class MainActivity extends ComponentActivity implements FrameListener {
 
     @Override
     protected void onPause() {
+        resumed = false;
+        stopRecording();
         if (cameraController != null) {
             cameraController.onPause();
         }
+        frameProcessor.stop();
+        updateStreamServer();
         super.onPause();
     }
 
+    @Override
+    protected void onDestroy() {
+        // The processing thread was joined in onPause, nothing runs a graph now
+        for (FilterGraph graph : modeGraphs.values()) {
+            graph.release();
+        }
+        modeGraphs.clear();
+        for (FilterGraph graph : edgeGraphs) {
+            graph.release();
+        }
+        super.onDestroy();
+    }
+
     // FrameListener
+    @Override
+    public void onPreviewSizeChosen(int width, int height) {
+        glView.setCameraFrameSize(width, height);
+    }
+
+    @Override
+    public void onTimestampSourceChosen(boolean realtime) {
+        realtimeSensorTimestamps = realtime;
+    }
+
     @Override
     public void onFrameAvailable(Bitmap frame) {
         // NORMAL: don't process, just show camera preview
@@ -155,20 +500,188 @@ public class MainActivity extends ComponentActivity implements FrameListener {
         int width = frame.getWidth();
         int height = frame.getHeight();
 
-        Bitmap bmp = frame.copy(Bitmap.Config.ARGB_8888, false);
+        Frame job = frameProcessor.obtainFrame(width * height * 4);
+        job.format = Frame.Format.RGBA;
+        job.width = width;
+        job.height = height;
+        job.rowStride = width * 4;
+        job.timestampNs = SystemClock.elapsedRealtimeNanos();
+        job.frameId = nextFrameId.getAndIncrement();
 
-        ByteBuffer buffer = ByteBuffer.allocate(width * height * 4);
-        bmp.copyPixelsToBuffer(buffer);
-        byte[] rgbaBytes = buffer.array();
+        // TextureView exposes no sensor timestamp, so capture == acquire here
+        frameTracer.begin(job.frameId, job.timestampNs, job.timestampNs);
 
-        byte[] processed;
+        // TextureView hands us ARGB_8888, whose in-memory layout is RGBA
+        frame.copyPixelsToBuffer(job.buffer);
+
+        frameProcessor.submit(job);
+    }
 
-        if (currentMode == ViewMode.GRAY) {
-            processed = NativeBridge.processFrameToGray(rgbaBytes, width, height);
-        } else { // ViewMode.EDGE
-            processed = NativeBridge.processFrameToEdges(rgbaBytes, width, height);
+    // Called on the camera background thread (IMAGE_READER mode)
+    @Override
+    public void onYuvFrameAvailable(Image image) {
+        if (currentMode == ViewMode.NORMAL) {
+            return;
         }
 
-        runOnUiThread(() -> glView.updateFrame(processed, width, height));
+        // Gray and edge only need luma, so U/V are never touched
+        Image.Plane yPlane = image.getPlanes()[0];
+        ByteBuffer yBuffer = yPlane.getBuffer();
+
+        // The image goes back to the reader when we return, so keep a copy
+        Frame job = frameProcessor.obtainFrame(yBuffer.remaining());
+        job.format = Frame.Format.LUMA;
+        job.width = image.getWidth();
+        job.height = image.getHeight();
+        job.rowStride = yPlane.getRowStride();
+        long acquireNs = SystemClock.elapsedRealtimeNanos();
+        // With an UNKNOWN timestamp source the sensor time cannot be put on
+        // the tracer's clock, so capture == acquire as for TextureView
+        job.timestampNs = realtimeSensorTimestamps ? image.getTimestamp() : acquireNs;
+        job.frameId = nextFrameId.getAndIncrement();
+
+        frameTracer.begin(job.frameId, job.timestampNs, acquireNs);
+
+        job.buffer.put(yBuffer);
+        job.buffer.flip();
+
+        frameProcessor.submit(job);
+    }
+
+    // FrameProcessor.Callback, runs on the processing thread
+    @Override
+    public void onProcessFrame(Frame frame) {
+        ViewMode mode = currentMode;
+        if (mode == ViewMode.NORMAL) {
+            return;
+        }
+        if (edgeGovernorResetPending) {
+            edgeGovernorResetPending = false;
+            edgeGovernor.reset();
+        }
+
+        FilterGraph graph = mode == ViewMode.EDGE
+                ? edgeGraphs[edgeGovernor.getLevel()]
+                : modeGraphs.get(mode);
+        int width = graph.getOutputWidth(frame.width, frame.height);
+        int height = graph.getOutputHeight(frame.width, frame.height);
+
+        // Gray and edges are single-channel: keep them that way up to the GPU
+        ByteBuffer outputBuffer = outputPool.acquire(width * height);
+
+        long enterNs = SystemClock.elapsedRealtimeNanos();
+        frameTracer.mark(frame.frameId, FrameTracer.STAGE_NATIVE_ENTER, enterNs);
+
+        // The Y plane is read in place with its row stride; the graph skips
+        // the colour conversion for it
+        int status = graph.run(
+                frame.buffer,
+                frame.format == Frame.Format.LUMA ? FilterGraph.INPUT_LUMA : FilterGraph.INPUT_RGBA,
+                frame.rowStride,
+                outputBuffer,
+                frame.width,
+                frame.height
+        );
+
+        long exitNs = SystemClock.elapsedRealtimeNanos();
+        frameTracer.mark(frame.frameId, FrameTracer.STAGE_NATIVE_EXIT, exitNs);
+
+        if (status == NativeBridge.STATUS_OK) {
+            if (mode == ViewMode.EDGE) {
+                edgeGovernor.onFrameProcessed(exitNs - enterNs);
+            }
+            // Renderer copies the pixels before the buffer goes back to the pool
+            glView.updateLuminanceFrame(outputBuffer, width, height, frame.frameId);
+            // Copied for the encoder thread, which does the rest
+            EdgeStreamServer server = streamServer;
+            if (server != null) {
+                server.publish(outputBuffer, width, height, frame.frameId);
+            }
+        } else {
+            Log.w(TAG, "Frame " + frame.frameId + " not processed, status " + status);
+        }
+        outputPool.release(outputBuffer);
+    }
+
+    private void startRecording() {
+        File file = new File(getExternalFilesDir(null), "edges_" + System.currentTimeMillis() + ".mp4");
+        try {
+            recorder = new VideoRecorder(recordingConfig(), file);
+        } catch (IOException | IllegalArgumentException e) {
+            Log.e(TAG, "Recording not started: " + e.getMessage());
+            return;
+        }
+        glView.startRecording(recorder);
+        recordButton.setText("Stop");
+        Log.i(TAG, "Recording to " + file.getAbsolutePath());
+    }
+
+    private void stopRecording() {
+        VideoRecorder stopping = recorder;
+        if (stopping == null) return;
+        recorder = null;
+        recordButton.setText("Record");
+
+        // Draining the encoder's last frames takes a moment: not on the UI thread
+        glView.stopRecording(() -> new Thread(() -> {
+            stopping.stop();
+            Log.i(TAG, "Recording finished: " + stopping.getEncodedFrameCount() + " frames encoded, "
+                    + stopping.getDroppedFrameCount() + " dropped");
+        }, "RecorderStop").start());
+    }
+
+    // The view's aspect ratio, at most MAX_RECORDING_SIDE on the long side,
+    // in multiples of 16 as most AVC encoders want
+    private RecordingConfig recordingConfig() {
+        int width = Math.max(1, glView.getWidth());
+        int height = Math.max(1, glView.getHeight());
+        float scale = Math.min(1f, (float) MAX_RECORDING_SIDE / Math.max(width, height));
+        return new RecordingConfig.Builder()
+                .size(Math.max(16, Math.round(width * scale / 16) * 16),
+                        Math.max(16, Math.round(height * scale / 16) * 16))
+                .bitRate(6_000_000)
+                .frameRate(30)
+                .keyFrameInterval(1)
+                .build();
+    }
+
+    // GLView.PresentationListener, on the GL thread. Refreshes the FPS text
+    // about once a second, with the frames pacing folded into newer ones.
+    private void onFramePresented(long frameId, long vsyncNs, long presentationNs) {
+        if (fpsWindowFrames == 0) {
+            fpsWindowStartNs = vsyncNs;
+        }
+        fpsWindowFrames++;
+
+        long elapsedNs = vsyncNs - fpsWindowStartNs;
+        if (elapsedNs < 1_000_000_000L) return;
+
+        String text = String.format(Locale.US, "FPS: %.1f  coalesced: %d",
+                (fpsWindowFrames - 1) * 1e9 / elapsedNs, glView.getCoalescedFrameCount());
+        fpsText.post(() -> fpsText.setText(text));
+        // This frame opens the next window
+        fpsWindowStartNs = vsyncNs;
+        fpsWindowFrames = 1;
+    }
+
+    private void exportFrameTrace() {
+        for (int stage = FrameTracer.STAGE_ACQUIRE; stage < FrameTracer.STAGE_COUNT; stage++) {
+            Log.i(TAG, "stage " + stage
+                    + " p50=" + frameTracer.stagePercentileNs(stage, 50) / 1000 + "us"
+                    + " p95=" + frameTracer.stagePercentileNs(stage, 95) / 1000 + "us"
+                    + " p99=" + frameTracer.stagePercentileNs(stage, 99) / 1000 + "us");
+        }
+        Log.i(TAG, "glass-to-glass"
+                + " p50=" + frameTracer.glassToGlassPercentileNs(50) / 1000 + "us"
+                + " p95=" + frameTracer.glassToGlassPercentileNs(95) / 1000 + "us"
+                + " p99=" + frameTracer.glassToGlassPercentileNs(99) / 1000 + "us");
+
+        File file = new File(getExternalFilesDir(null), "frame_trace.json");
+        try (Writer writer = new FileWriter(file)) {
+            frameTracer.writeChromeTrace(writer);
+            Log.i(TAG, "Frame trace written to " + file.getAbsolutePath());
+        } catch (IOException e) {
+            Log.e(TAG, "exportFrameTrace failed: " + e.getMessage());
+        }
     }
 }
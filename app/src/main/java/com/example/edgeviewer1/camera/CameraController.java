@@ -5,6 +5,7 @@ import android.annotation.SuppressLint;
 import android.content.Context;
 import android.content.pm.PackageManager;
 import android.graphics.Bitmap;
+import android.graphics.ImageFormat;
 import android.graphics.SurfaceTexture;
 import android.hardware.camera2.CameraAccessException;
 import android.hardware.camera2.CameraCaptureSession;
@@ -12,52 +13,141 @@ import android.hardware.camera2.CameraCharacteristics;
 import android.hardware.camera2.CameraDevice;
 import android.hardware.camera2.CameraManager;
 import android.hardware.camera2.CaptureRequest;
+import android.hardware.camera2.params.StreamConfigurationMap;
+import android.media.Image;
+import android.media.ImageReader;
 import android.os.Handler;
 import android.os.HandlerThread;
+import android.util.DisplayMetrics;
 import android.util.Log;
+import android.util.Range;
 import android.util.Size;
 import android.view.Surface;
 import android.view.TextureView;
 
 import androidx.core.content.ContextCompat;
 
-import java.util.Collections;
+import java.util.ArrayList;
+import java.util.List;
 
 public class CameraController {
 
     private static final String TAG = "CameraController";
 
+    // How processed modes get their pixels
+    public enum AcquisitionMode {
+        // TextureView.getBitmap() on the UI thread for every frame
+        TEXTURE_BITMAP,
+        // ImageReader YUV_420_888 frames delivered on the camera background thread
+        IMAGE_READER,
+        // No CPU copies: processed modes read the SurfaceTexture passed to
+        // setGpuSurfaceTexture() on the GPU
+        GPU_TEXTURE
+    }
+
+    // acquireLatestImage() needs room for one image in flight plus the newest one
+    private static final int MAX_READER_IMAGES = 2;
+
     private final Context context;
-    private final TextureView textureView;
+    private final TextureView textureView;     // null: the GPU texture is the only output
     private final CameraManager cameraManager;
     private final FrameListener frameListener;   // ✅ New field
+    private final AcquisitionMode acquisitionMode;
 
+    // Camera thread only: opened, restarted and closed on backgroundHandler
     private CameraDevice cameraDevice = null;
     private CameraCaptureSession captureSession = null;
     private CaptureRequest.Builder previewRequestBuilder = null;
+    private ImageReader imageReader = null;
+    private Surface gpuSurface = null;
+
     private HandlerThread backgroundThread = null;
     private Handler backgroundHandler = null;
-    private Size previewSize = new Size(1280, 720); // default, can tune later
+    private Bitmap frameBitmap = null;   // reused by getBitmap(Bitmap) in TEXTURE_BITMAP mode
+
+    // Output owned by GLView's GL context, see setGpuSurfaceTexture()
+    private volatile SurfaceTexture gpuTexture = null;
+    private boolean cameraOpenRequested = false;   // UI thread
+    private Size previewSize = new Size(1280, 720); // until openCamera() picks one
+    private Range<Integer> fpsRange = null;          // null: leave AE at its default
+
+    private StreamConfigSelector.Policy previewPolicy = StreamConfigSelector.Policy.MAX_FPS;
+    private int maxPreviewPixels = 1920 * 1080;
 
     // ✅ Updated constructor to accept FrameListener
     public CameraController(Context context, TextureView textureView, FrameListener frameListener) {
+        this(context, textureView, frameListener, AcquisitionMode.TEXTURE_BITMAP);
+    }
+
+    /**
+     * Single render path: the camera renders only into the SurfaceTexture
+     * passed to setGpuSurfaceTexture() (GLView's), so there is no TextureView
+     * output to composite or read back. The camera opens once that texture
+     * has been set.
+     */
+    public CameraController(Context context, FrameListener frameListener) {
+        this(context, null, frameListener, AcquisitionMode.GPU_TEXTURE);
+    }
+
+    public CameraController(Context context,
+                            TextureView textureView,
+                            FrameListener frameListener,
+                            AcquisitionMode acquisitionMode) {
         this.context = context;
         this.textureView = textureView;
         this.frameListener = frameListener;
+        this.acquisitionMode = acquisitionMode;
         this.cameraManager = (CameraManager) context.getSystemService(Context.CAMERA_SERVICE);
     }
 
+    /**
+     * How to pick the preview size and AE fps range on the next camera open.
+     * maxPixels caps the size by what processing can afford per frame.
+     */
+    public void setPreviewPolicy(StreamConfigSelector.Policy policy, int maxPixels) {
+        this.previewPolicy = policy;
+        this.maxPreviewPixels = maxPixels;
+    }
+
+    public Size getPreviewSize() {
+        return previewSize;
+    }
+
+    // Adds (or replaces) the GPU output; the running session is rebuilt on
+    // the camera thread. Call on the UI thread.
+    public void setGpuSurfaceTexture(SurfaceTexture texture) {
+        gpuTexture = texture;
+        Handler handler = backgroundHandler;
+        if (handler == null) return;
+
+        if (textureView == null && !cameraOpenRequested) {
+            openCameraForDisplay();
+        } else {
+            handler.post(this::restartPreview);
+        }
+    }
+
     public void onResume() {
         startBackgroundThread();
-        if (textureView.isAvailable()) {
+        if (textureView == null) {
+            if (gpuTexture != null) {
+                openCameraForDisplay();
+            }
+        } else if (textureView.isAvailable()) {
             openCamera(textureView.getWidth(), textureView.getHeight());
         } else {
             textureView.setSurfaceTextureListener(surfaceTextureListener);
         }
     }
 
+    // The teardown runs on the camera thread, after any onImageAvailable still
+    // copying out of the reader; quitSafely() then lets it drain before join()
     public void onPause() {
-        closeCamera();
+        cameraOpenRequested = false;
+        Handler handler = backgroundHandler;
+        if (handler != null) {
+            handler.post(this::closeCamera);
+        }
         stopBackgroundThread();
     }
 
@@ -81,8 +171,8 @@ public class CameraController {
                 @Override
                 public void onSurfaceTextureUpdated(SurfaceTexture surface) {
                     // ✅ Called every frame – grab bitmap & send up
-                    if (frameListener != null) {
-                        Bitmap bmp = textureView.getBitmap();
+                    if (frameListener != null && acquisitionMode == AcquisitionMode.TEXTURE_BITMAP) {
+                        Bitmap bmp = acquireFrameBitmap();
                         if (bmp != null) {
                             frameListener.onFrameAvailable(bmp);
                         }
@@ -90,6 +180,44 @@ public class CameraController {
                 }
             };
 
+    // Copies the current TextureView content into a Bitmap reused across frames
+    private Bitmap acquireFrameBitmap() {
+        int width = textureView.getWidth();
+        int height = textureView.getHeight();
+        if (width == 0 || height == 0) return null;
+
+        if (frameBitmap == null
+                || frameBitmap.getWidth() != width
+                || frameBitmap.getHeight() != height) {
+            frameBitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+        }
+        return textureView.getBitmap(frameBitmap);
+    }
+
+    // A method reference: a lambda here could not name frameListener, a
+    // blank final the constructor assigns after field initializers run
+    private final ImageReader.OnImageAvailableListener imageAvailableListener = this::onImageAvailable;
+
+    private void onImageAvailable(ImageReader reader) {
+        // Skip straight to the newest frame; older ones are discarded by the reader
+        Image image = reader.acquireLatestImage();
+        if (image == null) return;
+
+        try {
+            if (frameListener != null) {
+                frameListener.onYuvFrameAvailable(image);
+            }
+        } finally {
+            image.close();
+        }
+    }
+
+    // Without a TextureView the output is sized for the whole display
+    private void openCameraForDisplay() {
+        DisplayMetrics metrics = context.getResources().getDisplayMetrics();
+        openCamera(metrics.widthPixels, metrics.heightPixels);
+    }
+
     @SuppressLint("MissingPermission")
     private void openCamera(int width, int height) {
         if (ContextCompat.checkSelfPermission(context, Manifest.permission.CAMERA)
@@ -104,13 +232,72 @@ public class CameraController {
                 Log.e(TAG, "No back camera found");
                 return;
             }
-            // Optionally choose preview size here (for now we keep default)
+            selectStreamConfig(cameraManager.getCameraCharacteristics(cameraId), width, height);
+            cameraOpenRequested = true;
             cameraManager.openCamera(cameraId, stateCallback, backgroundHandler);
         } catch (CameraAccessException e) {
             Log.e(TAG, "openCamera failed: " + e.getMessage());
         }
     }
 
+    // Picks previewSize and fpsRange from what the camera advertises, so the
+    // sensor output is not rescaled and AE keeps a steady frame rate
+    private void selectStreamConfig(CameraCharacteristics characteristics, int viewWidth, int viewHeight) {
+        Range<Integer>[] ranges =
+                characteristics.get(CameraCharacteristics.CONTROL_AE_AVAILABLE_TARGET_FPS_RANGES);
+        int targetFps = 30;
+        if (ranges != null && ranges.length > 0) {
+            int[] lowers = new int[ranges.length];
+            int[] uppers = new int[ranges.length];
+            for (int i = 0; i < ranges.length; i++) {
+                lowers[i] = ranges[i].getLower();
+                uppers[i] = ranges[i].getUpper();
+            }
+            fpsRange = ranges[StreamConfigSelector.selectFpsRange(lowers, uppers, previewPolicy)];
+            targetFps = fpsRange.getUpper();
+        }
+
+        StreamConfigurationMap map =
+                characteristics.get(CameraCharacteristics.SCALER_STREAM_CONFIGURATION_MAP);
+        if (map == null) return;
+
+        // Every output in the session must support the size
+        Size[] sizes = acquisitionMode == AcquisitionMode.IMAGE_READER
+                ? map.getOutputSizes(ImageFormat.YUV_420_888)
+                : map.getOutputSizes(SurfaceTexture.class);
+        if (sizes == null || sizes.length == 0) return;
+
+        int[] widths = new int[sizes.length];
+        int[] heights = new int[sizes.length];
+        long[] minFrameDurations = new long[sizes.length];
+        for (int i = 0; i < sizes.length; i++) {
+            widths[i] = sizes[i].getWidth();
+            heights[i] = sizes[i].getHeight();
+            minFrameDurations[i] = acquisitionMode == AcquisitionMode.IMAGE_READER
+                    ? map.getOutputMinFrameDuration(ImageFormat.YUV_420_888, sizes[i])
+                    : map.getOutputMinFrameDuration(SurfaceTexture.class, sizes[i]);
+        }
+
+        int index = StreamConfigSelector.selectSize(
+                widths,
+                heights,
+                minFrameDurations,
+                viewWidth,
+                viewHeight,
+                maxPreviewPixels,
+                targetFps,
+                previewPolicy
+        );
+        previewSize = sizes[index];
+        if (frameListener != null) {
+            frameListener.onPreviewSizeChosen(previewSize.getWidth(), previewSize.getHeight());
+            Integer timestampSource = characteristics.get(CameraCharacteristics.SENSOR_INFO_TIMESTAMP_SOURCE);
+            frameListener.onTimestampSourceChosen(timestampSource != null
+                    && timestampSource == CameraCharacteristics.SENSOR_INFO_TIMESTAMP_SOURCE_REALTIME);
+        }
+        Log.i(TAG, "Preview " + previewSize + " at " + fpsRange + " fps (" + previewPolicy + ")");
+    }
+
     private String getBackCameraId() {
         try {
             for (String id : cameraManager.getCameraIdList()) {
@@ -150,41 +337,69 @@ public class CameraController {
 
     private void startPreview() {
         try {
-            SurfaceTexture texture = textureView.getSurfaceTexture();
-            if (texture == null) return;
-
-            texture.setDefaultBufferSize(previewSize.getWidth(), previewSize.getHeight());
-            Surface surface = new Surface(texture);
-
             CameraDevice device = cameraDevice;
             if (device == null) return;
 
             previewRequestBuilder =
                     device.createCaptureRequest(CameraDevice.TEMPLATE_PREVIEW);
-            previewRequestBuilder.addTarget(surface);
+            List<Surface> outputs = new ArrayList<>();
+
+            if (textureView != null) {
+                SurfaceTexture texture = textureView.getSurfaceTexture();
+                if (texture == null) return;
+
+                texture.setDefaultBufferSize(previewSize.getWidth(), previewSize.getHeight());
+                Surface surface = new Surface(texture);
+                previewRequestBuilder.addTarget(surface);
+                outputs.add(surface);
+            }
+
+            SurfaceTexture gpu = gpuTexture;
+            gpuSurface = null;
+            if (gpu != null) {
+                gpu.setDefaultBufferSize(previewSize.getWidth(), previewSize.getHeight());
+                gpuSurface = new Surface(gpu);
+                previewRequestBuilder.addTarget(gpuSurface);
+                outputs.add(gpuSurface);
+            } else if (textureView == null) {
+                return;   // nothing to render into yet
+            }
+
+            if (acquisitionMode == AcquisitionMode.IMAGE_READER) {
+                imageReader = ImageReader.newInstance(
+                        previewSize.getWidth(),
+                        previewSize.getHeight(),
+                        ImageFormat.YUV_420_888,
+                        MAX_READER_IMAGES
+                );
+                imageReader.setOnImageAvailableListener(imageAvailableListener, backgroundHandler);
+
+                Surface readerSurface = imageReader.getSurface();
+                previewRequestBuilder.addTarget(readerSurface);
+                outputs.add(readerSurface);
+            }
+
             previewRequestBuilder.set(
                     CaptureRequest.CONTROL_AF_MODE,
                     CaptureRequest.CONTROL_AF_MODE_CONTINUOUS_PICTURE
             );
+            if (fpsRange != null) {
+                previewRequestBuilder.set(CaptureRequest.CONTROL_AE_TARGET_FPS_RANGE, fpsRange);
+            }
 
             device.createCaptureSession(
-                    Collections.singletonList(surface),
+                    outputs,
                     new CameraCaptureSession.StateCallback() {
                         @Override
                         public void onConfigured(CameraCaptureSession session) {
-                            if (cameraDevice == null) return;
+                            // Closed or reopened since this session was requested
+                            if (cameraDevice != device) {
+                                session.close();
+                                return;
+                            }
 
                             captureSession = session;
-                            try {
-                                CaptureRequest request = previewRequestBuilder.build();
-                                session.setRepeatingRequest(
-                                        request,
-                                        null,
-                                        backgroundHandler
-                                );
-                            } catch (CameraAccessException e) {
-                                Log.e(TAG, "startPreview setRepeatingRequest error: " + e.getMessage());
-                            }
+                            updateRepeatingRequest();
                         }
 
                         @Override
@@ -199,6 +414,42 @@ public class CameraController {
         }
     }
 
+    // Background thread: issues the repeating request for the new session
+    private void updateRepeatingRequest() {
+        CameraCaptureSession session = captureSession;
+        if (session == null || previewRequestBuilder == null) return;
+
+        try {
+            session.setRepeatingRequest(
+                    previewRequestBuilder.build(),
+                    null,
+                    backgroundHandler
+            );
+        } catch (CameraAccessException e) {
+            Log.e(TAG, "startPreview setRepeatingRequest error: " + e.getMessage());
+        }
+    }
+
+    // Background thread: a new output set needs a new session
+    private void restartPreview() {
+        if (cameraDevice == null) return;
+
+        if (captureSession != null) {
+            captureSession.close();
+            captureSession = null;
+        }
+        if (imageReader != null) {
+            imageReader.close();
+            imageReader = null;
+        }
+        if (gpuSurface != null) {
+            gpuSurface.release();
+            gpuSurface = null;
+        }
+        startPreview();
+    }
+
+    // Background thread: closing the reader invalidates its acquired images
     private void closeCamera() {
         try {
             if (captureSession != null) {
@@ -217,6 +468,15 @@ public class CameraController {
         } catch (Exception e) {
             Log.e(TAG, "closeCamera device error: " + e.getMessage());
         }
+
+        if (imageReader != null) {
+            imageReader.close();
+            imageReader = null;
+        }
+        if (gpuSurface != null) {
+            gpuSurface.release();
+            gpuSurface = null;
+        }
     }
 
     private void startBackgroundThread() {
@@ -1,7 +1,27 @@
 package com.example.edgeviewer1.camera;
 
 import android.graphics.Bitmap;
+import android.media.Image;
 
 public interface FrameListener {
+    // The bitmap is reused for the next frame; copy out anything you need to keep.
     void onFrameAvailable(Bitmap frame);
+
+    // Called on the camera background thread in IMAGE_READER mode.
+    // The image is YUV_420_888 and is closed as soon as this returns,
+    // so implementations must not keep references to it or its planes.
+    default void onYuvFrameAvailable(Image image) {
+    }
+
+    // Called on the UI thread once the camera output size is known, before
+    // the first frame at that size.
+    default void onPreviewSizeChosen(int width, int height) {
+    }
+
+    // Called on the UI thread with the camera's SENSOR_INFO_TIMESTAMP_SOURCE,
+    // before the first frame. Image.getTimestamp() is on the
+    // SystemClock.elapsedRealtimeNanos() clock only if `realtime`; otherwise
+    // its time base is unspecified and not comparable to any app clock.
+    default void onTimestampSourceChosen(boolean realtime) {
+    }
 }
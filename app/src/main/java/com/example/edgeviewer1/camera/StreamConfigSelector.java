@@ -0,0 +1,160 @@
+package com.example.edgeviewer1.camera;
+
+/**
+ * Chooses the camera output size and AE target fps range from what the
+ * device advertises, according to a {@link Policy}.
+ *
+ * Works on plain arrays (filled from StreamConfigurationMap and
+ * CONTROL_AE_AVAILABLE_TARGET_FPS_RANGES by CameraController) so the choice
+ * can be tested without a camera.
+ */
+public final class StreamConfigSelector {
+
+    public enum Policy {
+        // Highest advertised frame rate, at about the view's resolution
+        MAX_FPS,
+        // Highest frame rate at the smallest size that still covers half the
+        // view; GLView scales it up, processing and readout get cheaper
+        MIN_LATENCY,
+        // Largest size within the pixel budget, at up to 30 fps
+        MAX_RESOLUTION
+    }
+
+    private static final int RESOLUTION_POLICY_MAX_FPS = 30;
+
+    // Sizes whose aspect ratio differs more than this from the view's are
+    // only used if nothing closer exists
+    private static final double ASPECT_TOLERANCE = 0.05;
+
+    private StreamConfigSelector() {
+    }
+
+    /**
+     * Index of the fps range to request. Among ranges with the best upper
+     * bound, a fixed range (lower == upper) is preferred: a range with a low
+     * minimum lets AE stretch exposure and halve the frame rate in low light.
+     */
+    public static int selectFpsRange(int[] lowers, int[] uppers, Policy policy) {
+        int best = -1;
+        for (int i = 0; i < uppers.length; i++) {
+            if (policy == Policy.MAX_RESOLUTION && uppers[i] > RESOLUTION_POLICY_MAX_FPS) {
+                continue;
+            }
+            if (best < 0
+                    || uppers[i] > uppers[best]
+                    || (uppers[i] == uppers[best] && lowers[i] > lowers[best])) {
+                best = i;
+            }
+        }
+        if (best < 0) {
+            // Only faster ranges exist: take the slowest of them
+            for (int i = 0; i < uppers.length; i++) {
+                if (best < 0 || uppers[i] < uppers[best]
+                        || (uppers[i] == uppers[best] && lowers[i] > lowers[best])) {
+                    best = i;
+                }
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Index of the output size to use, or -1 if there are no sizes.
+     *
+     * @param minFrameDurationsNs minimum frame duration per size; sizes that
+     *                            cannot reach targetFps are skipped
+     * @param viewWidth           size of the view showing the preview, in
+     * @param viewHeight          either orientation
+     * @param maxPixels           processing budget: larger sizes are skipped
+     */
+    public static int selectSize(
+            int[] widths,
+            int[] heights,
+            long[] minFrameDurationsNs,
+            int viewWidth,
+            int viewHeight,
+            int maxPixels,
+            int targetFps,
+            Policy policy
+    ) {
+        // Sensor output sizes are landscape; compare long side to long side
+        int viewLong = Math.max(viewWidth, viewHeight);
+        int viewShort = Math.min(viewWidth, viewHeight);
+        double viewAspect = viewShort > 0 ? (double) viewLong / viewShort : 16.0 / 9.0;
+        long frameDurationNs = targetFps > 0 ? 1_000_000_000L / targetFps : Long.MAX_VALUE;
+
+        boolean anyAspectMatch = false;
+        for (int i = 0; i < widths.length; i++) {
+            if (usable(i, widths, heights, minFrameDurationsNs, maxPixels, frameDurationNs)
+                    && aspectMatches(widths[i], heights[i], viewAspect)) {
+                anyAspectMatch = true;
+                break;
+            }
+        }
+
+        // Smallest size covering this many pixels along each side
+        int coverLong;
+        int coverShort;
+        switch (policy) {
+            case MIN_LATENCY:
+                coverLong = viewLong / 2;
+                coverShort = viewShort / 2;
+                break;
+            case MAX_FPS:
+                coverLong = viewLong;
+                coverShort = viewShort;
+                break;
+            default:
+                coverLong = Integer.MAX_VALUE;
+                coverShort = Integer.MAX_VALUE;
+                break;
+        }
+
+        int smallestCovering = -1;
+        int largest = -1;
+        for (int i = 0; i < widths.length; i++) {
+            if (!usable(i, widths, heights, minFrameDurationsNs, maxPixels, frameDurationNs)) continue;
+            if (anyAspectMatch && !aspectMatches(widths[i], heights[i], viewAspect)) continue;
+
+            long area = (long) widths[i] * heights[i];
+            if (largest < 0 || area > (long) widths[largest] * heights[largest]) {
+                largest = i;
+            }
+            boolean covers = Math.max(widths[i], heights[i]) >= coverLong
+                    && Math.min(widths[i], heights[i]) >= coverShort;
+            if (covers && (smallestCovering < 0
+                    || area < (long) widths[smallestCovering] * heights[smallestCovering])) {
+                smallestCovering = i;
+            }
+        }
+        if (smallestCovering >= 0) return smallestCovering;
+        if (largest >= 0) return largest;
+
+        // Nothing fits the budget and frame rate: the smallest size is the
+        // least bad choice
+        int smallest = -1;
+        for (int i = 0; i < widths.length; i++) {
+            if (smallest < 0 || (long) widths[i] * heights[i] < (long) widths[smallest] * heights[smallest]) {
+                smallest = i;
+            }
+        }
+        return smallest;
+    }
+
+    private static boolean usable(
+            int i,
+            int[] widths,
+            int[] heights,
+            long[] minFrameDurationsNs,
+            int maxPixels,
+            long frameDurationNs
+    ) {
+        return (long) widths[i] * heights[i] <= maxPixels
+                && minFrameDurationsNs[i] <= frameDurationNs;
+    }
+
+    private static boolean aspectMatches(int width, int height, double viewAspect) {
+        double aspect = (double) Math.max(width, height) / Math.min(width, height);
+        return Math.abs(aspect - viewAspect) <= ASPECT_TOLERANCE * viewAspect;
+    }
+}
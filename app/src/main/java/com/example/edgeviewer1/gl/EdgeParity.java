@@ -0,0 +1,68 @@
+package com.example.edgeviewer1.gl;
+
+/**
+ * Compares the GPU edge pass with the native Canny run on the same gray
+ * image (see GpuEdgeProcessor.checkParity).
+ *
+ * The two are not expected to match bit for bit: the shaders quantize the
+ * gradient to 8 bits between passes, break NMS ties differently and have no
+ * hysteresis, so an edge may sit one pixel off and weak chains Canny drops
+ * survive on the GPU. A pixel therefore only counts as a mismatch if it is
+ * an edge in one map with no edge within NEIGHBOURHOOD pixels in the other,
+ * and the GPU result is within tolerance while at most TOLERANCE of all edge
+ * pixels mismatch.
+ */
+final class EdgeParity {
+
+    static final int NEIGHBOURHOOD = 1;
+    static final float TOLERANCE = 0.1f;
+
+    private EdgeParity() {
+    }
+
+    // Edge pixels (non-zero) of either map without a counterpart in the other
+    static int countMismatches(byte[] expected, byte[] actual, int width, int height) {
+        int mismatches = 0;
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int i = y * width + x;
+                if (expected[i] != 0 && !hasEdgeNear(actual, x, y, width, height)) {
+                    mismatches++;
+                } else if (actual[i] != 0 && !hasEdgeNear(expected, x, y, width, height)) {
+                    mismatches++;
+                }
+            }
+        }
+        return mismatches;
+    }
+
+    // Pixels that are an edge in either map
+    static int countEdges(byte[] a, byte[] b, int count) {
+        int edges = 0;
+        for (int i = 0; i < count; i++) {
+            if (a[i] != 0 || b[i] != 0) {
+                edges++;
+            }
+        }
+        return edges;
+    }
+
+    static boolean isWithinTolerance(int mismatches, int edgePixels) {
+        return mismatches <= edgePixels * TOLERANCE;
+    }
+
+    private static boolean hasEdgeNear(byte[] edges, int x, int y, int width, int height) {
+        int top = Math.max(y - NEIGHBOURHOOD, 0);
+        int bottom = Math.min(y + NEIGHBOURHOOD, height - 1);
+        int left = Math.max(x - NEIGHBOURHOOD, 0);
+        int right = Math.min(x + NEIGHBOURHOOD, width - 1);
+        for (int yy = top; yy <= bottom; yy++) {
+            for (int xx = left; xx <= right; xx++) {
+                if (edges[yy * width + xx] != 0) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+}
@@ -1,21 +1,89 @@
 package com.example.edgeviewer1.gl;
 
+import android.app.ActivityManager;
 import android.content.Context;
+import android.content.pm.ConfigurationInfo;
+import android.content.res.TypedArray;
+import android.graphics.SurfaceTexture;
+import android.opengl.EGL14;
+import android.opengl.EGLContext;
+import android.opengl.EGLDisplay;
+import android.opengl.EGLExt;
+import android.opengl.EGLSurface;
+import android.opengl.GLES11Ext;
 import android.opengl.GLES20;
+import android.opengl.GLES30;
 import android.opengl.GLSurfaceView;
+import android.os.SystemClock;
 import android.util.AttributeSet;
+import android.util.Log;
+import android.view.Choreographer;
+import android.view.Display;
+import android.view.SurfaceHolder;
+
+import com.example.edgeviewer1.R;
+import com.example.edgeviewer1.pipeline.FrameTracer;
+import com.example.edgeviewer1.record.VideoRecorder;
 
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.nio.FloatBuffer;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 
+import javax.microedition.khronos.egl.EGL10;
 import javax.microedition.khronos.egl.EGLConfig;
 import javax.microedition.khronos.opengles.GL10;
 
 public class GLView extends GLSurfaceView {
 
+    private static final String TAG = "GLView";
+
+    // EGLExt.EGL_RECORDABLE_ANDROID, which is API 26
+    private static final int EGL_RECORDABLE_ANDROID = 0x3142;
+
+    // Processing done on the GPU, from the camera texture (see setGpuEffect)
+    public static final int GPU_EFFECT_NONE = 0;     // show frames passed to updateFrame()
+    public static final int GPU_EFFECT_GRAY = GpuEdgeProcessor.EFFECT_GRAY;
+    public static final int GPU_EFFECT_SOBEL = GpuEdgeProcessor.EFFECT_SOBEL;
+    public static final int GPU_EFFECT_EDGES = GpuEdgeProcessor.EFFECT_EDGES;
+    // The camera frame as is: with the camera rendering only into this view,
+    // the normal preview is a single texture draw in a single layer
+    public static final int GPU_EFFECT_CAMERA = GpuEdgeProcessor.EFFECT_CAMERA;
+
+    // Receives the SurfaceTexture the camera should render into. Called on
+    // the UI thread, again with a new texture whenever the GL context is
+    // recreated.
+    public interface CameraTextureListener {
+        void onCameraTextureAvailable(SurfaceTexture texture);
+    }
+
+    // Result of requestParityCheck(), delivered on the GL thread
+    // edgePixels: pixels that are an edge in either map; withinTolerance
+    // as defined by EdgeParity
+    public interface ParityListener {
+        void onParityResult(int mismatchedPixels, int edgePixels, boolean withinTolerance);
+    }
+
+    // Reported for every paced draw, on the GL thread. Times are
+    // System.nanoTime() based, like Choreographer and EGL presentation times;
+    // presentationNs is -1 where EGL_ANDROID_presentation_time is missing.
+    public interface PresentationListener {
+        void onFramePresented(long frameId, long vsyncNs, long presentationNs);
+    }
+
     private final FrameRenderer renderer;
 
+    // Frame pacing: new content only marks a render as pending; the next
+    // vsync callback turns any number of pending frames into one draw
+    private volatile boolean framePacing = false;
+    private final AtomicBoolean vsyncScheduled = new AtomicBoolean();
+    private final AtomicBoolean renderPending = new AtomicBoolean();
+    private final AtomicLong coalescedFrames = new AtomicLong();
+    private final Runnable scheduleVsync = this::scheduleVsync;
+    private final Choreographer.FrameCallback vsyncCallback = this::onVsync;
+
     public GLView(Context context) {
         this(context, null);
     }
@@ -23,8 +91,24 @@ public class GLView extends GLSurfaceView {
     public GLView(Context context, AttributeSet attrs) {
         super(context, attrs);
 
-        setEGLContextClientVersion(2);
-        renderer = new FrameRenderer();
+        boolean pixelBufferUpload = false;
+        boolean doubleBuffered = false;
+        if (attrs != null) {
+            TypedArray a = context.obtainStyledAttributes(attrs, R.styleable.GLView);
+            pixelBufferUpload = a.getBoolean(R.styleable.GLView_pixelBufferUpload, false);
+            framePacing = a.getBoolean(R.styleable.GLView_framePacing, false);
+            doubleBuffered = a.getBoolean(R.styleable.GLView_doubleBuffered, false);
+            a.recycle();
+        }
+
+        // PBO streaming needs GLES 3.0; otherwise stay on the plain GLES 2 path
+        boolean gles3 = pixelBufferUpload && supportsGles3(context);
+
+        setEGLContextClientVersion(gles3 ? 3 : 2);
+        setEGLConfigChooser(new RecordableConfigChooser(gles3));
+        renderer = new FrameRenderer(this, gles3);
+        renderer.framePacing = framePacing;
+        renderer.doubleBuffered = doubleBuffered;
         setRenderer(renderer);
 
         // We only render when a new frame comes
@@ -32,22 +116,360 @@ public class GLView extends GLSurfaceView {
     }
 
     public void updateFrame(byte[] rgbaBytes, int width, int height) {
-        renderer.updateFrame(rgbaBytes, width, height);
-        requestRender();
+        renderer.updateFrame(ByteBuffer.wrap(rgbaBytes), width, height, GLES20.GL_RGBA, 4, -1);
+        requestFrame();
+    }
+
+    public void updateFrame(ByteBuffer rgba, int width, int height) {
+        updateFrame(rgba, width, height, -1);
+    }
+
+    // frameId links the upload and draw to the frame's FrameTracer record (-1: untraced)
+    public void updateFrame(ByteBuffer rgba, int width, int height, long frameId) {
+        renderer.updateFrame(rgba, width, height, GLES20.GL_RGBA, 4, frameId);
+        requestFrame();
+    }
+
+    // Upload and draw boundaries of traced frames are recorded here
+    public void setFrameTracer(FrameTracer tracer) {
+        renderer.tracer = tracer;
+    }
+
+    public void setCameraTextureListener(CameraTextureListener listener) {
+        renderer.cameraTextureListener = listener;
+        SurfaceTexture texture = renderer.cameraTexture;
+        if (listener != null && texture != null) {
+            post(() -> listener.onCameraTextureAvailable(texture));
+        }
+    }
+
+    // Size of the camera buffers; also the resolution the GPU passes run at
+    public void setCameraFrameSize(int width, int height) {
+        renderer.cameraWidth = width;
+        renderer.cameraHeight = height;
+    }
+
+    // Processes and draws camera frames on the GPU instead of showing the
+    // frames passed to updateFrame(); GPU_EFFECT_NONE switches back
+    public void setGpuEffect(int effect) {
+        renderer.gpuEffect = effect;
+        requestFrame();
+    }
+
+    // Gradient magnitude (0..1 of the maximum) an edge must exceed. The
+    // magnitude is Canny's L1 norm |gx| + |gy| over its 8 * 255 range, so a
+    // Canny threshold t on 8-bit input is t / (8 * 255) here.
+    public void setEdgeThreshold(float threshold) {
+        renderer.edgeThreshold = threshold;
+    }
+
+    // Compares the next GPU_EFFECT_EDGES frame with the native Canny
+    public void requestParityCheck(ParityListener listener) {
+        renderer.parityListener = listener;
+    }
+
+    // Runs on the UI thread when a new GL context turns out not to support
+    // the GPU effects (no external textures, or a shader did not link). The
+    // effects then draw nothing and the caller should process on the CPU.
+    public void setGpuUnavailableListener(Runnable listener) {
+        renderer.gpuUnavailableListener = listener;
+    }
+
+    // Single-channel frame (gray / edges), uploaded as GL_LUMINANCE so only
+    // one byte per pixel crosses to the GPU; sampling expands it to gray RGB.
+    public void updateLuminanceFrame(ByteBuffer luminance, int width, int height) {
+        updateLuminanceFrame(luminance, width, height, -1);
+    }
+
+    public void updateLuminanceFrame(ByteBuffer luminance, int width, int height, long frameId) {
+        renderer.updateFrame(luminance, width, height, GLES20.GL_LUMINANCE, 1, frameId);
+        requestFrame();
+    }
+
+    /**
+     * Presents at most one new frame per display vsync. Frames arriving
+     * between two vsyncs are coalesced into one draw of the newest, and each
+     * draw is given a presentation time aligned to the vsync grid. Without
+     * pacing every new frame requests a draw immediately.
+     */
+    public void setFramePacing(boolean enabled) {
+        framePacing = enabled;
+        renderer.framePacing = enabled;
+    }
+
+    public void setPresentationListener(PresentationListener listener) {
+        renderer.presentationListener = listener;
+    }
+
+    // Frames replaced by a newer one before they could be drawn (paced mode)
+    public long getCoalescedFrameCount() {
+        return coalescedFrames.get();
+    }
+
+    // Any thread: new content is ready to be drawn
+    void requestFrame() {
+        if (!framePacing) {
+            requestRender();
+            return;
+        }
+        if (renderPending.getAndSet(true)) {
+            coalescedFrames.incrementAndGet();
+        }
+        if (vsyncScheduled.compareAndSet(false, true)) {
+            // Choreographer belongs to the UI thread's looper
+            post(scheduleVsync);
+        }
+    }
+
+    private void scheduleVsync() {
+        Choreographer.getInstance().postFrameCallback(vsyncCallback);
+    }
+
+    // UI thread, once per vsync while frames keep arriving
+    private void onVsync(long frameTimeNanos) {
+        vsyncScheduled.set(false);
+
+        Display display = getDisplay();
+        if (display != null && display.getRefreshRate() > 0) {
+            // Re-read every time: 90/120 Hz panels switch rates at runtime
+            renderer.vsyncPeriodNs = (long) (1_000_000_000L / display.getRefreshRate());
+        }
+        renderer.vsyncNs = frameTimeNanos;
+
+        if (renderPending.getAndSet(false)) {
+            requestRender();
+        }
+    }
+
+    /**
+     * Also renders every new frame into the recorder's input surface, with
+     * the same GL context and textures as the screen: a second draw call,
+     * no pixel readback. Frames are skipped while the encoder is behind, see
+     * VideoRecorder.tryBeginFrame().
+     */
+    public void startRecording(VideoRecorder recorder) {
+        queueEvent(() -> renderer.attachRecorder(recorder));
+    }
+
+    // whenDetached runs on the GL thread once no more frames go to the
+    // recorder; only then may it be stopped
+    public void stopRecording(Runnable whenDetached) {
+        queueEvent(() -> {
+            renderer.detachRecorder();
+            whenDetached.run();
+        });
+    }
+
+    // The GL thread runs queued events before it acts on a pause or a lost
+    // surface, so the mappings are gone before the context can be
+    @Override
+    public void onPause() {
+        queueEvent(renderer::revokeMappings);
+        super.onPause();
+    }
+
+    @Override
+    public void onResume() {
+        super.onResume();
+        queueEvent(renderer::resumeMappings);
+    }
+
+    @Override
+    public void surfaceCreated(SurfaceHolder holder) {
+        super.surfaceCreated(holder);
+        queueEvent(renderer::resumeMappings);
+    }
+
+    @Override
+    public void surfaceDestroyed(SurfaceHolder holder) {
+        // Detaching ends the GL thread, and the context with it
+        queueEvent(renderer::revokeMappings);
+        super.surfaceDestroyed(holder);
+    }
+
+    @Override
+    protected void onDetachedFromWindow() {
+        Choreographer.getInstance().removeFrameCallback(vsyncCallback);
+        vsyncScheduled.set(false);
+        super.onDetachedFromWindow();
+    }
+
+    static int loadShader(int type, String source) {
+        int shader = GLES20.glCreateShader(type);
+        GLES20.glShaderSource(shader, source);
+        GLES20.glCompileShader(shader);
+        return shader;
+    }
+
+    static int createProgram(String vertexSource, String fragmentSource) {
+        int vertexShader = loadShader(GLES20.GL_VERTEX_SHADER, vertexSource);
+        int fragmentShader = loadShader(GLES20.GL_FRAGMENT_SHADER, fragmentSource);
+        int program = GLES20.glCreateProgram();
+        GLES20.glAttachShader(program, vertexShader);
+        GLES20.glAttachShader(program, fragmentShader);
+        GLES20.glLinkProgram(program);
+        return program;
+    }
+
+    private static boolean supportsGles3(Context context) {
+        ActivityManager am =
+                (ActivityManager) context.getSystemService(Context.ACTIVITY_SERVICE);
+        if (am == null) return false;
+        ConfigurationInfo info = am.getDeviceConfigurationInfo();
+        return info != null && info.reqGlEsVersion >= 0x30000;
+    }
+
+    // The screen surface's config must also suit a video encoder's input
+    // surface, or the recording surface cannot share the context
+    private static class RecordableConfigChooser implements GLSurfaceView.EGLConfigChooser {
+
+        private static final int EGL_OPENGL_ES2_BIT = 0x0004;
+        private static final int EGL_OPENGL_ES3_BIT = 0x0040;
+
+        private final boolean gles3;
+
+        RecordableConfigChooser(boolean gles3) {
+            this.gles3 = gles3;
+        }
+
+        @Override
+        public EGLConfig chooseConfig(EGL10 egl, javax.microedition.khronos.egl.EGLDisplay display) {
+            int renderableType = gles3 ? EGL_OPENGL_ES3_BIT : EGL_OPENGL_ES2_BIT;
+            EGLConfig config = choose(egl, display, new int[]{
+                    EGL10.EGL_RED_SIZE, 8,
+                    EGL10.EGL_GREEN_SIZE, 8,
+                    EGL10.EGL_BLUE_SIZE, 8,
+                    EGL10.EGL_RENDERABLE_TYPE, renderableType,
+                    EGL_RECORDABLE_ANDROID, 1,
+                    EGL10.EGL_NONE
+            });
+            if (config == null) {
+                // Preview still works, recording will report an error
+                config = choose(egl, display, new int[]{
+                        EGL10.EGL_RED_SIZE, 8,
+                        EGL10.EGL_GREEN_SIZE, 8,
+                        EGL10.EGL_BLUE_SIZE, 8,
+                        EGL10.EGL_RENDERABLE_TYPE, renderableType,
+                        EGL10.EGL_NONE
+                });
+            }
+            if (config == null) {
+                throw new IllegalArgumentException("No RGB888 EGL config");
+            }
+            return config;
+        }
+
+        private static EGLConfig choose(EGL10 egl, javax.microedition.khronos.egl.EGLDisplay display, int[] attributes) {
+            EGLConfig[] configs = new EGLConfig[1];
+            int[] count = new int[1];
+            if (!egl.eglChooseConfig(display, attributes, configs, 1, count) || count[0] == 0) {
+                return null;
+            }
+            return configs[0];
+        }
     }
 
     private static class FrameRenderer implements GLSurfaceView.Renderer {
 
-        private int textureId = 0;
+        private static final int TEXTURE_COUNT = 2;
+
+        // Display pipeline depth assumed when picking a presentation time
+        private static final int PRESENT_AFTER_VSYNCS = 2;
+
+        // PBO mode: every triple-buffer slot has its own pixel unpack buffer.
+        // A frame after the GL thread sourced a texture update from it, the
+        // buffer is mapped again and the producer's next updateFrame() into
+        // that slot copies straight into it. Per frame that is one CPU copy,
+        // on the producer thread, plus an asynchronous transfer into the
+        // texture. Without PBOs (or when the mapped size does not fit) the
+        // frame is copied into the slot and glTexSubImage2D copies it again
+        // on the GL thread.
+        private final boolean pixelBuffersRequested;
+        private boolean usePixelBuffers = false;
+
+        // The triple buffer gives the producer and the GL thread exclusive
+        // slots, so a slot's mapping needs no lock: the producer claims it
+        // for the copy and hands it back (FrameSlot.mapping). Only
+        // revokeMappings() reaches into slots it does not own, on the GL
+        // thread and only before the context may go away.
+        private static final ByteBuffer CLAIMED = ByteBuffer.allocate(0);
+        private boolean mappingsSuspended = false;   // GL thread
+        private final FrameSlot[] slots = new FrameSlot[3];
+        private int slotCount = 0;
+
+        // Texture storage is (re)allocated only when size or format changes;
+        // every other frame is streamed with glTexSubImage2D.
+        private final int[] textureIds = new int[TEXTURE_COUNT];
+        private final int[] textureWidths = new int[TEXTURE_COUNT];
+        private final int[] textureHeights = new int[TEXTURE_COUNT];
+        private final int[] textureFormats = new int[TEXTURE_COUNT];
+        private int currentTexture = 0;
+
+        // Alternate between two textures so a new upload never has to wait
+        // for the GPU to finish sampling the texture used by the previous
+        // draw; set from the doubleBuffered layout attribute
+        boolean doubleBuffered = false;
+        volatile FrameTracer tracer = null;
+
+        private final GLView view;
+
+        // Frame pacing, see setFramePacing()
+        volatile boolean framePacing = false;
+        volatile PresentationListener presentationListener = null;
+        volatile long vsyncNs = 0;                      // last vsync, System.nanoTime()
+        volatile long vsyncPeriodNs = 16_666_667;
+        private boolean presentationTimeSupported = false;
+        private long drawnFrameId = -1;
+
+        // Camera frames arrive in an external texture owned by this context
+        volatile CameraTextureListener cameraTextureListener = null;
+        volatile SurfaceTexture cameraTexture = null;
+        volatile int cameraWidth = 0;
+        volatile int cameraHeight = 0;
+        private volatile boolean cameraFrameAvailable = false;
+        private int cameraTextureId = 0;
+        private boolean hasCameraFrame = false;
+        private final float[] cameraMatrix = new float[16];
+
+        private final GpuEdgeProcessor gpuProcessor = new GpuEdgeProcessor();
+        volatile int gpuEffect = GPU_EFFECT_NONE;
+        volatile float edgeThreshold = 0.04f;
+        volatile ParityListener parityListener = null;
+        volatile Runnable gpuUnavailableListener = null;
+        private boolean gpuEffectsSupported = false;
+        private int viewportWidth = 0;
+        private int viewportHeight = 0;
+
+        // What the last draw showed, so it can be drawn again for the recorder
+        private static final int OUTPUT_NONE = 0;
+        private static final int OUTPUT_CAMERA = 1;
+        private static final int OUTPUT_EFFECT = 2;
+        private static final int OUTPUT_FRAME = 3;
+        private int lastOutput = OUTPUT_NONE;
+        private int lastEffectTexture = 0;
+        private boolean contentChanged = false;
+
+        // Recording (GL thread only), see startRecording()
+        private VideoRecorder recorder = null;
+        private android.opengl.EGLSurface encoderSurface = EGL14.EGL_NO_SURFACE;
+
         private int programId = 0;
 
         private int positionHandle = 0;
         private int texCoordHandle = 0;
         private int textureUniformHandle = 0;
 
+        // Producer (processing thread) → GL thread hand-off; see updateFrame()
+        private final TripleBuffer<FrameSlot> frames = new TripleBuffer<>(this::newSlot);
+
+        // GL thread only: the frame most recently taken from `frames`
+        private FrameSlot frameSlot = null;
         private ByteBuffer frameBuffer = null;
         private int frameWidth = 0;
         private int frameHeight = 0;
+        private int frameFormat = GLES20.GL_RGBA;   // GL_RGBA or GL_LUMINANCE
+        private boolean frameDirty = false;          // not yet uploaded
+        private long frameId = -1;
 
         // Fullscreen quad (X,Y)
         private final float[] vertexCoords = new float[]{
@@ -68,7 +490,10 @@ public class GLView extends GLSurfaceView {
         private final FloatBuffer vertexBuffer;
         private final FloatBuffer texCoordBuffer;
 
-        FrameRenderer() {
+        FrameRenderer(GLView view, boolean pixelBuffersRequested) {
+            this.view = view;
+            this.pixelBuffersRequested = pixelBuffersRequested;
+
             vertexBuffer = ByteBuffer
                     .allocateDirect(vertexCoords.length * 4)
                     .order(ByteOrder.nativeOrder())
@@ -84,15 +509,91 @@ public class GLView extends GLSurfaceView {
             texCoordBuffer.position(0);
         }
 
-        void updateFrame(byte[] bytes, int width, int height) {
-            if (frameBuffer == null || frameWidth != width || frameHeight != height) {
-                frameWidth = width;
-                frameHeight = height;
-                frameBuffer = ByteBuffer.allocateDirect(width * height * 4);
+        private FrameSlot newSlot() {
+            FrameSlot slot = new FrameSlot();
+            slots[slotCount++] = slot;
+            return slot;
+        }
+
+        // Must be called from a single producer thread at a time. Copies into
+        // the triple buffer's back slot (its mapped pixel buffer in PBO mode),
+        // so the GL thread never sees a half-written frame or dimensions that
+        // don't match its pixels.
+        void updateFrame(ByteBuffer pixels,
+                         int width,
+                         int height,
+                         int format,
+                         int bytesPerPixel,
+                         long frameId) {
+            int size = width * height * bytesPerPixel;
+
+            FrameSlot slot = frames.back();
+            ByteBuffer mapping = slot.mapping.getAndSet(CLAIMED);
+            ByteBuffer target;
+            slot.inPixelBuffer = mapping != null && mapping.capacity() >= size;
+            if (slot.inPixelBuffer) {
+                target = mapping;
+            } else {
+                if (slot.pixels == null || slot.pixels.capacity() < size) {
+                    // Only on the first frames or when the resolution grows
+                    slot.pixels = ByteBuffer.allocateDirect(size);
+                }
+                target = slot.pixels;
+            }
+            slot.width = width;
+            slot.height = height;
+            slot.format = format;
+            slot.frameId = frameId;
+
+            target.clear();
+            pixels.position(0);
+            pixels.limit(size);
+            target.put(pixels);
+            pixels.clear();
+            target.position(0);
+
+            // Back to the GL thread, which unmaps it before the upload
+            slot.mapping.set(mapping);
+            frames.publish();
+        }
+
+        // GL thread, queued before the context may be destroyed: unmaps every
+        // buffer, so the producer can no longer write into one. Frames already
+        // written stay in their (now unmapped) buffers.
+        void revokeMappings() {
+            mappingsSuspended = true;
+            boolean unmapped = false;
+            for (int i = 0; i < slotCount; i++) {
+                FrameSlot slot = slots[i];
+                ByteBuffer mapping = takeMapping(slot);
+                if (mapping != null) {
+                    GLES30.glBindBuffer(GLES30.GL_PIXEL_UNPACK_BUFFER, slot.pixelBuffer);
+                    GLES30.glUnmapBuffer(GLES30.GL_PIXEL_UNPACK_BUFFER);
+                    unmapped = true;
+                }
+            }
+            if (unmapped) {
+                GLES30.glBindBuffer(GLES30.GL_PIXEL_UNPACK_BUFFER, 0);
+            }
+        }
+
+        // GL thread: the context survived, mapping may resume
+        void resumeMappings() {
+            mappingsSuspended = false;
+        }
+
+        // Takes a slot's mapping away from the producer. A producer in the
+        // middle of its copy holds it for at most that one copy; only the
+        // revoke and context-reset paths ever wait for that.
+        private static ByteBuffer takeMapping(FrameSlot slot) {
+            while (true) {
+                ByteBuffer mapping = slot.mapping.get();
+                if (mapping == CLAIMED) {
+                    Thread.yield();
+                } else if (slot.mapping.compareAndSet(mapping, null)) {
+                    return mapping;
+                }
             }
-            frameBuffer.clear();
-            frameBuffer.put(bytes);
-            frameBuffer.position(0);
         }
 
         @Override
@@ -105,40 +606,239 @@ public class GLView extends GLSurfaceView {
             texCoordHandle = GLES20.glGetAttribLocation(programId, "aTexCoord");
             textureUniformHandle = GLES20.glGetUniformLocation(programId, "uTexture");
 
-            textureId = createTexture();
+            // New context: any previous texture storage is gone
+            for (int i = 0; i < TEXTURE_COUNT; i++) {
+                textureIds[i] = createTexture();
+                textureWidths[i] = 0;
+                textureHeights[i] = 0;
+            }
+            currentTexture = 0;
+
+            gpuEffectsSupported = gpuProcessor.init();
+            if (!gpuEffectsSupported) {
+                Log.w(TAG, "GPU effects unavailable in this context");
+                Runnable listener = gpuUnavailableListener;
+                if (listener != null) {
+                    view.post(listener);
+                }
+            }
+            createCameraTexture();
+            lastOutput = OUTPUT_NONE;
+
+            // A recording survives the context: point it at the new one
+            if (recorder != null) {
+                encoderSurface = EGL14.EGL_NO_SURFACE;
+                createEncoderSurface();
+            }
+
+            EGLDisplay display = EGL14.eglGetCurrentDisplay();
+            String extensions = EGL14.eglQueryString(display, EGL14.EGL_EXTENSIONS);
+            presentationTimeSupported = extensions != null
+                    && extensions.contains("EGL_ANDROID_presentation_time");
+
+            // Trust the context we actually got, not the one we asked for
+            String version = GLES20.glGetString(GLES20.GL_VERSION);
+            usePixelBuffers = pixelBuffersRequested
+                    && version != null
+                    && version.startsWith("OpenGL ES 3");
+
+            // Pixel buffers of the old context are gone, and so is any frame
+            // that was written into one (uploadFromPixelBuffer() skips those:
+            // their slot has no buffer in this context)
+            for (int i = 0; i < slotCount; i++) {
+                FrameSlot slot = slots[i];
+                takeMapping(slot);
+                slot.pixelBuffer = 0;
+                slot.pixelBufferSize = 0;
+            }
+            mappingsSuspended = false;
+            frameDirty = frameSlot != null && frameSlot.width > 0 && !frameSlot.inPixelBuffer;
         }
 
         @Override
         public void onSurfaceChanged(GL10 unused, int width, int height) {
             GLES20.glViewport(0, 0, width, height);
+            viewportWidth = width;
+            viewportHeight = height;
+        }
+
+        // The old texture (if any) died with its context; the camera has to
+        // be pointed at the new one
+        private void createCameraTexture() {
+            SurfaceTexture old = cameraTexture;
+            if (old != null) {
+                old.release();
+            }
+
+            int[] ids = new int[1];
+            GLES20.glGenTextures(1, ids, 0);
+            cameraTextureId = ids[0];
+            GLES20.glBindTexture(GLES11Ext.GL_TEXTURE_EXTERNAL_OES, cameraTextureId);
+            GLES20.glTexParameteri(GLES11Ext.GL_TEXTURE_EXTERNAL_OES, GLES20.GL_TEXTURE_MIN_FILTER, GLES20.GL_LINEAR);
+            GLES20.glTexParameteri(GLES11Ext.GL_TEXTURE_EXTERNAL_OES, GLES20.GL_TEXTURE_MAG_FILTER, GLES20.GL_LINEAR);
+            GLES20.glTexParameteri(GLES11Ext.GL_TEXTURE_EXTERNAL_OES, GLES20.GL_TEXTURE_WRAP_S, GLES20.GL_CLAMP_TO_EDGE);
+            GLES20.glTexParameteri(GLES11Ext.GL_TEXTURE_EXTERNAL_OES, GLES20.GL_TEXTURE_WRAP_T, GLES20.GL_CLAMP_TO_EDGE);
+
+            SurfaceTexture texture = new SurfaceTexture(cameraTextureId);
+            texture.setOnFrameAvailableListener(st -> {
+                cameraFrameAvailable = true;
+                view.requestFrame();
+            });
+            cameraTexture = texture;
+            hasCameraFrame = false;
+
+            CameraTextureListener listener = cameraTextureListener;
+            if (listener != null) {
+                view.post(() -> listener.onCameraTextureAvailable(texture));
+            }
+        }
+
+        // Latches the newest camera frame into the external texture. Runs on
+        // every draw so the camera's buffer queue never backs up, even while
+        // the frame is not shown.
+        private boolean latchCameraFrame() {
+            if (!cameraFrameAvailable) return false;
+            cameraFrameAvailable = false;
+            cameraTexture.updateTexImage();
+            cameraTexture.getTransformMatrix(cameraMatrix);
+            hasCameraFrame = true;
+            return true;
+        }
+
+        // Returns false if there is nothing to process yet
+        private boolean drawGpuEffect(int effect) {
+            if (!gpuEffectsSupported) return false;
+            if (effect == GPU_EFFECT_CAMERA) {
+                if (!hasCameraFrame) return false;
+                gpuProcessor.drawCamera(cameraTextureId, cameraMatrix);
+                lastOutput = OUTPUT_CAMERA;
+                return true;
+            }
+
+            int width = cameraWidth;
+            int height = cameraHeight;
+            if (!hasCameraFrame || width <= 0 || height <= 0) return false;
+
+            float threshold = edgeThreshold;
+            gpuProcessor.setSize(width, height);
+            int result = gpuProcessor.process(cameraTextureId, cameraMatrix, effect, threshold);
+
+            ParityListener listener = parityListener;
+            if (listener != null && effect == GPU_EFFECT_EDGES) {
+                parityListener = null;
+                gpuProcessor.checkParity(listener);
+            }
+
+            GLES20.glViewport(0, 0, viewportWidth, viewportHeight);
+            gpuProcessor.draw(result);
+            lastOutput = OUTPUT_EFFECT;
+            lastEffectTexture = result;
+            return true;
         }
 
         @Override
         public void onDrawFrame(GL10 unused) {
+            drawnFrameId = -1;
+            contentChanged = false;
+            drawFrame();
+            if (recorder != null && contentChanged) {
+                recordFrame();
+            }
+            if (framePacing) {
+                schedulePresentation();
+            }
+        }
+
+        // Stamps the frame about to be swapped with the vsync it should be
+        // shown at: PRESENT_AFTER_VSYNCS after the vsync that triggered this
+        // draw, or the next vsync that is still in the future. SurfaceFlinger
+        // then holds it until that vsync instead of showing it whenever the
+        // GPU happens to finish, which keeps the cadence even.
+        private void schedulePresentation() {
+            long vsync = vsyncNs;
+            long period = vsyncPeriodNs;
+            long presentationNs = -1;
+
+            if (presentationTimeSupported && vsync > 0) {
+                presentationNs = vsync + PRESENT_AFTER_VSYNCS * period;
+                long now = System.nanoTime();
+                if (presentationNs <= now) {
+                    presentationNs += ((now - presentationNs) / period + 1) * period;
+                }
+                EGLDisplay display = EGL14.eglGetCurrentDisplay();
+                EGLSurface surface = EGL14.eglGetCurrentSurface(EGL14.EGL_DRAW);
+                EGLExt.eglPresentationTimeANDROID(display, surface, presentationNs);
+            }
+
+            PresentationListener listener = presentationListener;
+            if (listener != null) {
+                listener.onFramePresented(drawnFrameId, vsync, presentationNs);
+            }
+        }
+
+        private void drawFrame() {
             GLES20.glClear(GLES20.GL_COLOR_BUFFER_BIT);
 
-            if (frameBuffer == null) {
+            boolean latched = latchCameraFrame();
+            int effect = gpuEffect;
+            if (effect != GPU_EFFECT_NONE) {
+                contentChanged = drawGpuEffect(effect) && latched;
                 return;
             }
 
-            GLES20.glUseProgram(programId);
+            if (usePixelBuffers && !frameDirty && frameSlot != null) {
+                // The front slot's texture update was issued by an earlier
+                // draw, so its buffer can be mapped for the producer now
+                // without stalling on that transfer
+                mapPixelBuffer(frameSlot, frameWidth * frameHeight * (frameFormat == GLES20.GL_LUMINANCE ? 1 : 4));
+            }
+
+            if (frames.update()) {
+                FrameSlot slot = frames.front();
+                frameSlot = slot;
+                frameBuffer = slot.pixels;
+                frameWidth = slot.width;
+                frameHeight = slot.height;
+                frameFormat = slot.format;
+                frameId = slot.frameId;
+                frameDirty = true;
+            }
+
+            if (frameSlot == null) {
+                return;
+            }
+
+            FrameTracer frameTracer = tracer;
+            boolean uploaded = false;
 
             // Update texture pixels
-            GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, textureId);
-            if (frameWidth > 0 && frameHeight > 0) {
-                frameBuffer.position(0);
-                GLES20.glTexImage2D(
-                        GLES20.GL_TEXTURE_2D,
-                        0,
-                        GLES20.GL_RGBA,
-                        frameWidth,
-                        frameHeight,
-                        0,
-                        GLES20.GL_RGBA,
-                        GLES20.GL_UNSIGNED_BYTE,
-                        frameBuffer
-                );
+            if (frameDirty && frameWidth > 0 && frameHeight > 0) {
+                if (doubleBuffered) {
+                    currentTexture = (currentTexture + 1) % TEXTURE_COUNT;
+                }
+                uploadFrame(currentTexture);
+                frameDirty = false;
+                uploaded = true;
+                contentChanged = true;
+
+                if (frameTracer != null) {
+                    frameTracer.mark(frameId, FrameTracer.STAGE_UPLOAD, SystemClock.elapsedRealtimeNanos());
+                }
             }
+            drawFrameTexture();
+            drawnFrameId = frameId;
+
+            // GLSurfaceView swaps right after we return, so this is the last
+            // point we see before the frame is queued for presentation
+            if (uploaded && frameTracer != null) {
+                frameTracer.mark(frameId, FrameTracer.STAGE_SWAP, SystemClock.elapsedRealtimeNanos());
+            }
+        }
+
+        // Fullscreen quad with the current frame texture
+        private void drawFrameTexture() {
+            GLES20.glUseProgram(programId);
+            GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, textureIds[currentTexture]);
 
             // Set vertex data
             GLES20.glEnableVertexAttribArray(positionHandle);
@@ -167,6 +867,192 @@ public class GLView extends GLSurfaceView {
 
             GLES20.glDisableVertexAttribArray(positionHandle);
             GLES20.glDisableVertexAttribArray(texCoordHandle);
+            lastOutput = OUTPUT_FRAME;
+        }
+
+        void attachRecorder(VideoRecorder newRecorder) {
+            detachRecorder();
+            recorder = newRecorder;
+            createEncoderSurface();
+        }
+
+        void detachRecorder() {
+            if (encoderSurface != EGL14.EGL_NO_SURFACE) {
+                EGL14.eglDestroySurface(EGL14.eglGetCurrentDisplay(), encoderSurface);
+                encoderSurface = EGL14.EGL_NO_SURFACE;
+            }
+            recorder = null;
+        }
+
+        // Window surface on the encoder's input, created with the config of
+        // the current context so the context can be made current on it
+        private void createEncoderSurface() {
+            EGLDisplay display = EGL14.eglGetCurrentDisplay();
+            EGLContext context = EGL14.eglGetCurrentContext();
+
+            int[] configId = new int[1];
+            EGL14.eglQueryContext(display, context, EGL14.EGL_CONFIG_ID, configId, 0);
+            android.opengl.EGLConfig[] configs = new android.opengl.EGLConfig[1];
+            int[] count = new int[1];
+            EGL14.eglChooseConfig(display, new int[]{EGL14.EGL_CONFIG_ID, configId[0], EGL14.EGL_NONE}, 0,
+                    configs, 0, 1, count, 0);
+
+            if (count[0] > 0) {
+                encoderSurface = EGL14.eglCreateWindowSurface(display, configs[0],
+                        recorder.getInputSurface(), new int[]{EGL14.EGL_NONE}, 0);
+            }
+            if (encoderSurface == null || encoderSurface == EGL14.EGL_NO_SURFACE) {
+                Log.e(TAG, "Cannot render into the encoder surface, EGL error 0x"
+                        + Integer.toHexString(EGL14.eglGetError()));
+                encoderSurface = EGL14.EGL_NO_SURFACE;
+                recorder = null;
+            }
+        }
+
+        // Draws what the screen just got into the encoder surface, stamped
+        // with the current time, then switches back to the screen surface
+        private void recordFrame() {
+            if (encoderSurface == EGL14.EGL_NO_SURFACE || !recorder.tryBeginFrame()) {
+                return;
+            }
+            EGLDisplay display = EGL14.eglGetCurrentDisplay();
+            EGLContext context = EGL14.eglGetCurrentContext();
+            EGLSurface drawSurface = EGL14.eglGetCurrentSurface(EGL14.EGL_DRAW);
+            EGLSurface readSurface = EGL14.eglGetCurrentSurface(EGL14.EGL_READ);
+
+            EGL14.eglMakeCurrent(display, encoderSurface, encoderSurface, context);
+            GLES20.glViewport(0, 0, recorder.getConfig().width, recorder.getConfig().height);
+            GLES20.glClear(GLES20.GL_COLOR_BUFFER_BIT);
+            switch (lastOutput) {
+                case OUTPUT_CAMERA:
+                    gpuProcessor.drawCamera(cameraTextureId, cameraMatrix);
+                    break;
+                case OUTPUT_EFFECT:
+                    gpuProcessor.draw(lastEffectTexture);
+                    break;
+                case OUTPUT_FRAME:
+                    drawFrameTexture();
+                    break;
+            }
+            EGLExt.eglPresentationTimeANDROID(display, encoderSurface, System.nanoTime());
+            EGL14.eglSwapBuffers(display, encoderSurface);
+
+            EGL14.eglMakeCurrent(display, drawSurface, readSurface, context);
+            GLES20.glViewport(0, 0, viewportWidth, viewportHeight);
+        }
+
+        private void uploadFrame(int slot) {
+            GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, textureIds[slot]);
+
+            // Luminance rows are not 4-byte aligned for arbitrary widths
+            GLES20.glPixelStorei(
+                    GLES20.GL_UNPACK_ALIGNMENT,
+                    frameFormat == GLES20.GL_LUMINANCE ? 1 : 4
+            );
+
+            if (textureWidths[slot] != frameWidth
+                    || textureHeights[slot] != frameHeight
+                    || textureFormats[slot] != frameFormat) {
+                // Allocate storage only; pixels follow via glTexSubImage2D
+                GLES20.glTexImage2D(
+                        GLES20.GL_TEXTURE_2D,
+                        0,
+                        frameFormat,
+                        frameWidth,
+                        frameHeight,
+                        0,
+                        frameFormat,
+                        GLES20.GL_UNSIGNED_BYTE,
+                        null
+                );
+                textureWidths[slot] = frameWidth;
+                textureHeights[slot] = frameHeight;
+                textureFormats[slot] = frameFormat;
+            }
+
+            if (usePixelBuffers && uploadFromPixelBuffer(frameSlot)) {
+                return;
+            }
+
+            frameBuffer.position(0);
+            GLES20.glTexSubImage2D(
+                    GLES20.GL_TEXTURE_2D,
+                    0,
+                    0,
+                    0,
+                    frameWidth,
+                    frameHeight,
+                    frameFormat,
+                    GLES20.GL_UNSIGNED_BYTE,
+                    frameBuffer
+            );
+        }
+
+        // Unmaps the slot's pixel buffer. If the producer wrote the frame into
+        // it, sources the texture update from it (asynchronously, by offset)
+        // and returns true; otherwise the caller uploads from slot.pixels.
+        private boolean uploadFromPixelBuffer(FrameSlot slot) {
+            // The front slot is ours alone: the producer cannot hold its mapping
+            ByteBuffer mapping = slot.mapping.getAndSet(null);
+            // false: the contents were lost while mapped
+            boolean intact = true;
+            if (mapping != null) {
+                GLES30.glBindBuffer(GLES30.GL_PIXEL_UNPACK_BUFFER, slot.pixelBuffer);
+                intact = GLES30.glUnmapBuffer(GLES30.GL_PIXEL_UNPACK_BUFFER);
+            }
+            if (!slot.inPixelBuffer) {
+                GLES30.glBindBuffer(GLES30.GL_PIXEL_UNPACK_BUFFER, 0);
+                return false;
+            }
+            if (slot.pixelBuffer == 0) {
+                return true;   // written into a buffer of a lost context
+            }
+
+            if (intact) {
+                GLES30.glBindBuffer(GLES30.GL_PIXEL_UNPACK_BUFFER, slot.pixelBuffer);
+                // With a PBO bound the last argument is an offset into it
+                GLES30.glTexSubImage2D(
+                        GLES30.GL_TEXTURE_2D,
+                        0,
+                        0,
+                        0,
+                        frameWidth,
+                        frameHeight,
+                        frameFormat,
+                        GLES30.GL_UNSIGNED_BYTE,
+                        0
+                );
+            }
+            GLES30.glBindBuffer(GLES30.GL_PIXEL_UNPACK_BUFFER, 0);
+            return true;
+        }
+
+        // Maps the slot's pixel buffer, (re)sized for `size` bytes, so the
+        // producer's next frame in this slot is written straight into it
+        private void mapPixelBuffer(FrameSlot slot, int size) {
+            if (mappingsSuspended || slot.mapping.get() != null || size <= 0) return;
+
+            if (slot.pixelBuffer == 0) {
+                int[] ids = new int[1];
+                GLES30.glGenBuffers(1, ids, 0);
+                slot.pixelBuffer = ids[0];
+            }
+            GLES30.glBindBuffer(GLES30.GL_PIXEL_UNPACK_BUFFER, slot.pixelBuffer);
+            if (slot.pixelBufferSize != size) {
+                GLES30.glBufferData(GLES30.GL_PIXEL_UNPACK_BUFFER, size, null, GLES30.GL_STREAM_DRAW);
+                slot.pixelBufferSize = size;
+            }
+            // Invalidate: the producer overwrites everything, so the
+            // driver need not preserve (or wait for) the old contents
+            ByteBuffer mapping = (ByteBuffer) GLES30.glMapBufferRange(
+                    GLES30.GL_PIXEL_UNPACK_BUFFER,
+                    0,
+                    size,
+                    GLES30.GL_MAP_WRITE_BIT | GLES30.GL_MAP_INVALIDATE_BUFFER_BIT
+            );
+            GLES30.glBindBuffer(GLES30.GL_PIXEL_UNPACK_BUFFER, 0);
+            // Published once the slot goes back to the producer in update()
+            slot.mapping.set(mapping);
         }
 
         private int createTexture() {
@@ -199,21 +1085,22 @@ public class GLView extends GLSurfaceView {
             return texId;
         }
 
-        private int loadShader(int type, String source) {
-            int shader = GLES20.glCreateShader(type);
-            GLES20.glShaderSource(shader, source);
-            GLES20.glCompileShader(shader);
-            return shader;
-        }
+        private static class FrameSlot {
+            ByteBuffer pixels;
+            int width;
+            int height;
+            int format;
+            long frameId;
 
-        private int createProgram(String vertexSource, String fragmentSource) {
-            int vertexShader = loadShader(GLES20.GL_VERTEX_SHADER, vertexSource);
-            int fragmentShader = loadShader(GLES20.GL_FRAGMENT_SHADER, fragmentSource);
-            int program = GLES20.glCreateProgram();
-            GLES20.glAttachShader(program, vertexShader);
-            GLES20.glAttachShader(program, fragmentShader);
-            GLES20.glLinkProgram(program);
-            return program;
+            // PBO mode, see pixelBuffersRequested. mapping holds the buffer
+            // while it is mapped for the producer, CLAIMED during the
+            // producer's copy and null otherwise; inPixelBuffer tells whether
+            // the frame went into it or into pixels. pixelBuffer and
+            // pixelBufferSize belong to the GL thread.
+            final AtomicReference<ByteBuffer> mapping = new AtomicReference<>();
+            int pixelBuffer;
+            int pixelBufferSize;
+            boolean inPixelBuffer;
         }
 
         private static final String VERT_SHADER =
@@ -0,0 +1,368 @@
+package com.example.edgeviewer1.gl;
+
+import android.opengl.GLES11Ext;
+import android.opengl.GLES20;
+
+import com.example.edgeviewer1.jni.NativeBridge;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+
+/**
+ * Gray conversion, Sobel gradient magnitude and Canny-like edge detection of
+ * the camera's external (OES) texture, entirely in fragment shaders.
+ *
+ * Passes, each into its own framebuffer at camera resolution:
+ *   gray      OES texture -> luma (BT.601 weights, as cvtColor)
+ *   gradient  3x3 Sobel -> r = (|gx| + |gy|) / 8, g = NMS axis
+ *   edges     non-maximum suppression along that axis + threshold
+ * The result is drawn to the current framebuffer by {@link #draw};
+ * {@link #drawCamera} shows the unprocessed frame.
+ * Unlike OpenCV's Canny there is no hysteresis: every maximum above the
+ * threshold is an edge. {@link #checkParity} compares the result with the
+ * native Canny, see {@link EdgeParity} for the tolerance.
+ *
+ * GL thread only; {@link #init} must run again on every new context.
+ */
+final class GpuEdgeProcessor {
+
+    static final int EFFECT_GRAY = 1;
+    static final int EFFECT_SOBEL = 2;        // gradient magnitude, |gx| + |gy| / 8
+    static final int EFFECT_EDGES = 3;
+    static final int EFFECT_CAMERA = 4;       // colour frame, no processing
+
+    private static final int PASS_GRAY = 0;
+    private static final int PASS_GRADIENT = 1;
+    private static final int PASS_EDGES = 2;
+    private static final int PASS_COUNT = 3;
+
+    private static final float[] IDENTITY = {
+            1f, 0f, 0f, 0f,
+            0f, 1f, 0f, 0f,
+            0f, 0f, 1f, 0f,
+            0f, 0f, 0f, 1f
+    };
+
+    private final int[] framebuffers = new int[PASS_COUNT];
+    private final int[] textures = new int[PASS_COUNT];
+    private int width = 0;
+    private int height = 0;
+
+    // A linked program with its locations, looked up once at init
+    private static final class Program {
+        final int id;
+        final int position;
+        final int texCoord;
+        final int texMatrix;
+        final int texture;
+        final int texelSize;   // -1 where the shader has none
+        final int threshold;
+
+        Program(String vertexSource, String fragmentSource) {
+            id = GLView.createProgram(vertexSource, fragmentSource);
+            position = GLES20.glGetAttribLocation(id, "aPosition");
+            texCoord = GLES20.glGetAttribLocation(id, "aTexCoord");
+            texMatrix = GLES20.glGetUniformLocation(id, "uTexMatrix");
+            texture = GLES20.glGetUniformLocation(id, "uTexture");
+            texelSize = GLES20.glGetUniformLocation(id, "uTexelSize");
+            threshold = GLES20.glGetUniformLocation(id, "uThreshold");
+        }
+    }
+
+    private Program grayProgram;
+    private Program gradientProgram;
+    private Program edgesProgram;
+    private Program displayProgram;
+    private Program cameraProgram;
+
+    // Fullscreen quad in GL orientation: texture row 0 at the bottom
+    private final FloatBuffer vertexBuffer = floatBuffer(new float[]{
+            -1f, -1f,
+            1f, -1f,
+            -1f, 1f,
+            1f, 1f
+    });
+    private final FloatBuffer texCoordBuffer = floatBuffer(new float[]{
+            0f, 0f,
+            1f, 0f,
+            0f, 1f,
+            1f, 1f
+    });
+
+    // Returns false if the context cannot run the passes, i.e. it lacks
+    // external textures or a shader failed to link
+    boolean init() {
+        grayProgram = new Program(VERT_SHADER, GRAY_FRAG_SHADER);
+        gradientProgram = new Program(VERT_SHADER, GRADIENT_FRAG_SHADER);
+        edgesProgram = new Program(VERT_SHADER, EDGES_FRAG_SHADER);
+        displayProgram = new Program(VERT_SHADER, DISPLAY_FRAG_SHADER);
+        cameraProgram = new Program(VERT_SHADER, CAMERA_FRAG_SHADER);
+
+        GLES20.glGenFramebuffers(PASS_COUNT, framebuffers, 0);
+        GLES20.glGenTextures(PASS_COUNT, textures, 0);
+        width = 0;
+        height = 0;
+
+        String extensions = GLES20.glGetString(GLES20.GL_EXTENSIONS);
+        return extensions != null
+                && extensions.contains("GL_OES_EGL_image_external")
+                && isLinked(grayProgram)
+                && isLinked(gradientProgram)
+                && isLinked(edgesProgram)
+                && isLinked(displayProgram)
+                && isLinked(cameraProgram);
+    }
+
+    // (Re)allocates the pass targets when the camera size changes
+    void setSize(int width, int height) {
+        if (width == this.width && height == this.height) return;
+        this.width = width;
+        this.height = height;
+
+        for (int i = 0; i < PASS_COUNT; i++) {
+            GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, textures[i]);
+            // Nearest: every tap of the 3x3 kernels must hit exactly one texel
+            GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MIN_FILTER, GLES20.GL_NEAREST);
+            GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MAG_FILTER, GLES20.GL_NEAREST);
+            // Clamp matches BORDER_REPLICATE on the CPU side
+            GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_WRAP_S, GLES20.GL_CLAMP_TO_EDGE);
+            GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_WRAP_T, GLES20.GL_CLAMP_TO_EDGE);
+            GLES20.glTexImage2D(GLES20.GL_TEXTURE_2D, 0, GLES20.GL_RGBA, width, height, 0,
+                    GLES20.GL_RGBA, GLES20.GL_UNSIGNED_BYTE, null);
+
+            GLES20.glBindFramebuffer(GLES20.GL_FRAMEBUFFER, framebuffers[i]);
+            GLES20.glFramebufferTexture2D(GLES20.GL_FRAMEBUFFER, GLES20.GL_COLOR_ATTACHMENT0,
+                    GLES20.GL_TEXTURE_2D, textures[i], 0);
+        }
+        GLES20.glBindFramebuffer(GLES20.GL_FRAMEBUFFER, 0);
+    }
+
+    /**
+     * Runs the passes the effect needs on the camera texture and returns the
+     * texture holding the result. Leaves the default framebuffer bound; the
+     * caller restores its viewport.
+     */
+    int process(int oesTexture, float[] cameraMatrix, int effect, float threshold) {
+        GLES20.glViewport(0, 0, width, height);
+
+        runPass(grayProgram, PASS_GRAY, GLES11Ext.GL_TEXTURE_EXTERNAL_OES, oesTexture, cameraMatrix, 0f);
+        int result = textures[PASS_GRAY];
+
+        if (effect == EFFECT_SOBEL || effect == EFFECT_EDGES) {
+            runPass(gradientProgram, PASS_GRADIENT, GLES20.GL_TEXTURE_2D, textures[PASS_GRAY], IDENTITY, 0f);
+            result = textures[PASS_GRADIENT];
+        }
+        if (effect == EFFECT_EDGES) {
+            runPass(edgesProgram, PASS_EDGES, GLES20.GL_TEXTURE_2D, textures[PASS_GRADIENT], IDENTITY, threshold);
+            result = textures[PASS_EDGES];
+        }
+
+        GLES20.glBindFramebuffer(GLES20.GL_FRAMEBUFFER, 0);
+        return result;
+    }
+
+    // Shows the red channel of a pass result as gray in the current viewport
+    void draw(int texture) {
+        GLES20.glUseProgram(displayProgram.id);
+        GLES20.glActiveTexture(GLES20.GL_TEXTURE0);
+        GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, texture);
+        drawQuad(displayProgram, IDENTITY);
+    }
+
+    // Draws the camera texture itself in colour into the current viewport
+    void drawCamera(int oesTexture, float[] cameraMatrix) {
+        GLES20.glUseProgram(cameraProgram.id);
+        GLES20.glActiveTexture(GLES20.GL_TEXTURE0);
+        GLES20.glBindTexture(GLES11Ext.GL_TEXTURE_EXTERNAL_OES, oesTexture);
+        drawQuad(cameraProgram, cameraMatrix);
+    }
+
+    /**
+     * Reads back the gray and edge passes of the last EFFECT_EDGES frame,
+     * runs NativeBridge.processLumaToEdgesMono (the CPU pipeline's Canny) on
+     * that same gray image and reports how far the two edge maps differ.
+     * Stalls the pipeline; meant for occasional verification only.
+     */
+    void checkParity(GLView.ParityListener listener) {
+        int pixels = width * height;
+        ByteBuffer rgba = ByteBuffer.allocateDirect(pixels * 4);
+
+        byte[] gray = readRedChannel(PASS_GRAY, rgba);
+        byte[] gpuEdges = readRedChannel(PASS_EDGES, rgba);
+
+        // Rows stay in GL order for both; Canny does not depend on it
+        ByteBuffer grayBuffer = ByteBuffer.allocateDirect(pixels);
+        grayBuffer.put(gray);
+        ByteBuffer nativeBuffer = ByteBuffer.allocateDirect(pixels);
+        int status = NativeBridge.processLumaToEdgesMono(grayBuffer, width, nativeBuffer, width, height);
+        if (status != NativeBridge.STATUS_OK) return;
+
+        byte[] nativeEdges = new byte[pixels];
+        nativeBuffer.get(nativeEdges);
+
+        int mismatches = EdgeParity.countMismatches(nativeEdges, gpuEdges, width, height);
+        int edgePixels = EdgeParity.countEdges(nativeEdges, gpuEdges, pixels);
+        listener.onParityResult(mismatches, edgePixels, EdgeParity.isWithinTolerance(mismatches, edgePixels));
+    }
+
+    int getWidth() {
+        return width;
+    }
+
+    int getHeight() {
+        return height;
+    }
+
+    private byte[] readRedChannel(int pass, ByteBuffer rgba) {
+        GLES20.glBindFramebuffer(GLES20.GL_FRAMEBUFFER, framebuffers[pass]);
+        rgba.clear();
+        GLES20.glReadPixels(0, 0, width, height, GLES20.GL_RGBA, GLES20.GL_UNSIGNED_BYTE, rgba);
+        GLES20.glBindFramebuffer(GLES20.GL_FRAMEBUFFER, 0);
+
+        byte[] red = new byte[width * height];
+        for (int i = 0; i < red.length; i++) {
+            red[i] = rgba.get(i * 4);
+        }
+        return red;
+    }
+
+    private void runPass(Program program, int pass, int sourceTarget, int source, float[] texMatrix, float threshold) {
+        GLES20.glBindFramebuffer(GLES20.GL_FRAMEBUFFER, framebuffers[pass]);
+        GLES20.glUseProgram(program.id);
+
+        GLES20.glActiveTexture(GLES20.GL_TEXTURE0);
+        GLES20.glBindTexture(sourceTarget, source);
+
+        // Location -1 (unused in this shader) is ignored by glUniform*
+        GLES20.glUniform2f(program.texelSize, 1f / width, 1f / height);
+        GLES20.glUniform1f(program.threshold, threshold);
+        drawQuad(program, texMatrix);
+    }
+
+    private void drawQuad(Program program, float[] texMatrix) {
+        GLES20.glUniformMatrix4fv(program.texMatrix, 1, false, texMatrix, 0);
+        GLES20.glUniform1i(program.texture, 0);
+
+        GLES20.glEnableVertexAttribArray(program.position);
+        GLES20.glVertexAttribPointer(program.position, 2, GLES20.GL_FLOAT, false, 0, vertexBuffer);
+        GLES20.glEnableVertexAttribArray(program.texCoord);
+        GLES20.glVertexAttribPointer(program.texCoord, 2, GLES20.GL_FLOAT, false, 0, texCoordBuffer);
+
+        GLES20.glDrawArrays(GLES20.GL_TRIANGLE_STRIP, 0, 4);
+
+        GLES20.glDisableVertexAttribArray(program.position);
+        GLES20.glDisableVertexAttribArray(program.texCoord);
+    }
+
+    private static boolean isLinked(Program program) {
+        int[] status = new int[1];
+        GLES20.glGetProgramiv(program.id, GLES20.GL_LINK_STATUS, status, 0);
+        return status[0] == GLES20.GL_TRUE;
+    }
+
+    private static FloatBuffer floatBuffer(float[] values) {
+        FloatBuffer buffer = ByteBuffer
+                .allocateDirect(values.length * 4)
+                .order(ByteOrder.nativeOrder())
+                .asFloatBuffer();
+        buffer.put(values);
+        buffer.position(0);
+        return buffer;
+    }
+
+    // Gradient and NMS need exact texel arithmetic where the GPU has it
+    private static final String PRECISION =
+            "#ifdef GL_FRAGMENT_PRECISION_HIGH\n" +
+                    "precision highp float;\n" +
+                    "#else\n" +
+                    "precision mediump float;\n" +
+                    "#endif\n";
+
+    private static final String VERT_SHADER =
+            "attribute vec4 aPosition;\n" +
+                    "attribute vec2 aTexCoord;\n" +
+                    "uniform mat4 uTexMatrix;\n" +
+                    "varying vec2 vTexCoord;\n" +
+                    "void main() {\n" +
+                    "    gl_Position = aPosition;\n" +
+                    "    vTexCoord = (uTexMatrix * vec4(aTexCoord, 0.0, 1.0)).xy;\n" +
+                    "}\n";
+
+    private static final String GRAY_FRAG_SHADER =
+            "#extension GL_OES_EGL_image_external : require\n" +
+                    PRECISION +
+                    "varying vec2 vTexCoord;\n" +
+                    "uniform samplerExternalOES uTexture;\n" +
+                    "void main() {\n" +
+                    "    float y = dot(texture2D(uTexture, vTexCoord).rgb, vec3(0.299, 0.587, 0.114));\n" +
+                    "    gl_FragColor = vec4(y, y, y, 1.0);\n" +
+                    "}\n";
+
+    private static final String GRADIENT_FRAG_SHADER =
+            PRECISION +
+                    "varying vec2 vTexCoord;\n" +
+                    "uniform sampler2D uTexture;\n" +
+                    "uniform vec2 uTexelSize;\n" +
+                    "float tap(float dx, float dy) {\n" +
+                    "    return texture2D(uTexture, vTexCoord + vec2(dx, dy) * uTexelSize).r;\n" +
+                    "}\n" +
+                    "void main() {\n" +
+                    "    float tl = tap(-1.0, 1.0);\n" +
+                    "    float t = tap(0.0, 1.0);\n" +
+                    "    float tr = tap(1.0, 1.0);\n" +
+                    "    float l = tap(-1.0, 0.0);\n" +
+                    "    float r = tap(1.0, 0.0);\n" +
+                    "    float bl = tap(-1.0, -1.0);\n" +
+                    "    float b = tap(0.0, -1.0);\n" +
+                    "    float br = tap(1.0, -1.0);\n" +
+                    "    float gx = (tr + 2.0 * r + br) - (tl + 2.0 * l + bl);\n" +
+                    "    float gy = (tl + 2.0 * t + tr) - (bl + 2.0 * b + br);\n" +
+                    "    float ax = abs(gx);\n" +
+                    "    float ay = abs(gy);\n" +
+                    "    float axis;\n" +
+                    "    if (ay <= ax * 0.41421356) axis = 0.0;\n" +
+                    "    else if (ax <= ay * 0.41421356) axis = 1.0;\n" +
+                    "    else if ((gx > 0.0) == (gy > 0.0)) axis = 2.0;\n" +
+                    "    else axis = 3.0;\n" +
+                    "    gl_FragColor = vec4(min((ax + ay) / 8.0, 1.0), axis / 3.0, 0.0, 1.0);\n" +
+                    "}\n";
+
+    private static final String EDGES_FRAG_SHADER =
+            PRECISION +
+                    "varying vec2 vTexCoord;\n" +
+                    "uniform sampler2D uTexture;\n" +
+                    "uniform vec2 uTexelSize;\n" +
+                    "uniform float uThreshold;\n" +
+                    "void main() {\n" +
+                    "    vec4 center = texture2D(uTexture, vTexCoord);\n" +
+                    "    float axis = floor(center.g * 3.0 + 0.5);\n" +
+                    "    vec2 step;\n" +
+                    "    if (axis < 0.5) step = vec2(1.0, 0.0);\n" +
+                    "    else if (axis < 1.5) step = vec2(0.0, 1.0);\n" +
+                    "    else if (axis < 2.5) step = vec2(1.0, 1.0);\n" +
+                    "    else step = vec2(1.0, -1.0);\n" +
+                    "    float a = texture2D(uTexture, vTexCoord + step * uTexelSize).r;\n" +
+                    "    float b = texture2D(uTexture, vTexCoord - step * uTexelSize).r;\n" +
+                    "    float edge = (center.r > uThreshold && center.r > a && center.r >= b) ? 1.0 : 0.0;\n" +
+                    "    gl_FragColor = vec4(edge, edge, edge, 1.0);\n" +
+                    "}\n";
+
+    private static final String DISPLAY_FRAG_SHADER =
+            "precision mediump float;\n" +
+                    "varying vec2 vTexCoord;\n" +
+                    "uniform sampler2D uTexture;\n" +
+                    "void main() {\n" +
+                    "    float v = texture2D(uTexture, vTexCoord).r;\n" +
+                    "    gl_FragColor = vec4(v, v, v, 1.0);\n" +
+                    "}\n";
+
+    private static final String CAMERA_FRAG_SHADER =
+            "#extension GL_OES_EGL_image_external : require\n" +
+                    "precision mediump float;\n" +
+                    "varying vec2 vTexCoord;\n" +
+                    "uniform samplerExternalOES uTexture;\n" +
+                    "void main() {\n" +
+                    "    gl_FragColor = texture2D(uTexture, vTexCoord);\n" +
+                    "}\n";
+}
@@ -0,0 +1,61 @@
+package com.example.edgeviewer1.gl;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Lock-free triple buffer for handing frames from one producer thread to
+ * one consumer thread.
+ *
+ * The producer fills {@link #back()} and calls {@link #publish()}; the
+ * consumer calls {@link #update()} and reads {@link #front()}. The three
+ * slots rotate through a single atomic exchange, so neither side ever blocks
+ * or allocates, and the consumer always sees a complete, most recent frame.
+ */
+public class TripleBuffer<T> {
+
+    // The shared "ready" slot index lives in the low bits, plus a flag telling
+    // the consumer that the producer published into it since the last update
+    private static final int INDEX_MASK = 0x3;
+    private static final int FRESH = 0x4;
+
+    private final Object[] slots = new Object[3];
+    private final AtomicInteger ready = new AtomicInteger(1);
+
+    private int back = 0;    // only touched by the producer
+    private int front = 2;   // only touched by the consumer
+
+    public TripleBuffer(Supplier<T> factory) {
+        for (int i = 0; i < slots.length; i++) {
+            slots[i] = factory.get();
+        }
+    }
+
+    // Producer: slot to write the next frame into
+    @SuppressWarnings("unchecked")
+    public T back() {
+        return (T) slots[back];
+    }
+
+    // Producer: make the back slot the newest ready frame and take over the old ready slot
+    public void publish() {
+        int previous = ready.getAndSet(back | FRESH);
+        back = previous & INDEX_MASK;
+    }
+
+    // Consumer: swap in the newest ready frame. Returns false if nothing new was published.
+    public boolean update() {
+        if ((ready.get() & FRESH) == 0) {
+            return false;
+        }
+        int previous = ready.getAndSet(front);
+        front = previous & INDEX_MASK;
+        return true;
+    }
+
+    // Consumer: the frame obtained by the last successful update()
+    @SuppressWarnings("unchecked")
+    public T front() {
+        return (T) slots[front];
+    }
+}
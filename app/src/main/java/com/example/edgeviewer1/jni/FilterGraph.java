@@ -0,0 +1,162 @@
+package com.example.edgeviewer1.jni;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * A chain of native image operations run on a frame in one JNI call.
+ *
+ * Stages are added through {@link Builder} and sent to native code once;
+ * each frame then crosses JNI a single time, whatever the number of stages.
+ * Intermediates stay in native buffers owned by the graph, and stages that
+ * do nothing for the actual input (e.g. gray on a luma plane) are skipped.
+ * The output is always single-channel, ready for
+ * GLView.updateLuminanceFrame().
+ *
+ * A graph keeps per-run state: use it from one thread at a time and call
+ * {@link #release()} once no frame is being processed with it.
+ */
+public class FilterGraph {
+
+    // Input formats, see NativeBridge.runFilterGraph()
+    public static final int INPUT_RGBA = 0;
+    public static final int INPUT_LUMA = 1;
+
+    // Stage opcodes, mirrored by FilterOp in filter_graph.hpp
+    static final int OP_GRAY = 0;
+    static final int OP_BLUR = 1;
+    static final int OP_CANNY = 2;
+    static final int OP_SOBEL = 3;
+    static final int OP_THRESHOLD = 4;
+    static final int OP_MORPHOLOGY = 5;
+    static final int OP_RESIZE = 6;
+
+    static final int PARAMS_PER_STAGE = 4;
+
+    public static final int THRESHOLD_BINARY = 0;
+    public static final int THRESHOLD_BINARY_INV = 1;
+    public static final int THRESHOLD_OTSU = 2;
+
+    public static final int MORPH_ERODE = 0;
+    public static final int MORPH_DILATE = 1;
+    public static final int MORPH_OPEN = 2;
+    public static final int MORPH_CLOSE = 3;
+
+    private long handle;
+
+    // Output size for the last input size seen, to avoid a JNI call per frame
+    private final int[] outputSize = new int[2];
+    private int sizedWidth = -1;
+    private int sizedHeight = -1;
+
+    private FilterGraph(long handle) {
+        this.handle = handle;
+    }
+
+    public int getOutputWidth(int width, int height) {
+        updateOutputSize(width, height);
+        return outputSize[0];
+    }
+
+    public int getOutputHeight(int width, int height) {
+        updateOutputSize(width, height);
+        return outputSize[1];
+    }
+
+    // Returns a NativeBridge.STATUS_* code; output must be a direct buffer of
+    // at least getOutputWidth() * getOutputHeight() bytes
+    public int run(
+            ByteBuffer input,
+            int format,
+            int rowStride,
+            ByteBuffer output,
+            int width,
+            int height
+    ) {
+        return NativeBridge.runFilterGraph(handle, input, format, rowStride, output, width, height);
+    }
+
+    public void release() {
+        if (handle != 0) {
+            NativeBridge.releaseFilterGraph(handle);
+            handle = 0;
+        }
+    }
+
+    private void updateOutputSize(int width, int height) {
+        if (width == sizedWidth && height == sizedHeight) {
+            return;
+        }
+        int status = NativeBridge.getFilterGraphOutputSize(handle, width, height, outputSize);
+        if (status != NativeBridge.STATUS_OK) {
+            throw new IllegalStateException("Filter graph output size failed, status " + status);
+        }
+        sizedWidth = width;
+        sizedHeight = height;
+    }
+
+    public static class Builder {
+        private int[] ops = new int[8];
+        private float[] params = new float[8 * PARAMS_PER_STAGE];
+        private int count;
+
+        // RGBA to single channel; a no-op for luma input
+        public Builder gray() {
+            return add(OP_GRAY, 0, 0, 0);
+        }
+
+        // Gaussian blur with an odd kernel size
+        public Builder blur(int kernelSize, float sigma) {
+            return add(OP_BLUR, kernelSize, sigma, 0);
+        }
+
+        public Builder canny(float lowThreshold, float highThreshold) {
+            return add(OP_CANNY, lowThreshold, highThreshold, 0);
+        }
+
+        // Gradient magnitude |dx| + |dy| of a 3x3 Sobel, times scale
+        public Builder sobel(float scale) {
+            return add(OP_SOBEL, scale, 0, 0);
+        }
+
+        // mode is one of THRESHOLD_*; the threshold is ignored for Otsu
+        public Builder threshold(float threshold, int mode) {
+            return add(OP_THRESHOLD, threshold, mode, 0);
+        }
+
+        // op is one of MORPH_*, with a square kernel
+        public Builder morphology(int op, int kernelSize, int iterations) {
+            return add(OP_MORPHOLOGY, op, kernelSize, iterations);
+        }
+
+        // Changes the size of everything after it, and of the output
+        public Builder resize(float scale) {
+            return add(OP_RESIZE, scale, 0, 0);
+        }
+
+        public FilterGraph build() {
+            long handle = NativeBridge.createFilterGraph(
+                    Arrays.copyOf(ops, count),
+                    Arrays.copyOf(params, count * PARAMS_PER_STAGE)
+            );
+            if (handle == 0) {
+                throw new IllegalArgumentException("Invalid filter graph stage parameters");
+            }
+            return new FilterGraph(handle);
+        }
+
+        private Builder add(int op, float p0, float p1, float p2) {
+            if (count == ops.length) {
+                ops = Arrays.copyOf(ops, count * 2);
+                params = Arrays.copyOf(params, count * 2 * PARAMS_PER_STAGE);
+            }
+            ops[count] = op;
+            int base = count * PARAMS_PER_STAGE;
+            params[base] = p0;
+            params[base + 1] = p1;
+            params[base + 2] = p2;
+            count++;
+            return this;
+        }
+    }
+}
@@ -1,11 +1,23 @@
 package com.example.edgeviewer1.jni;
 
+import java.nio.ByteBuffer;
+
 public class NativeBridge {
 
     static {
         System.loadLibrary("edgeviewer-lib");
     }
 
+    // Status codes returned by every call that writes into a caller buffer
+    public static final int STATUS_OK = 0;
+    public static final int STATUS_INVALID_SIZE = -1;          // width/height <= 0 or rowStride < width
+    public static final int STATUS_INPUT_SIZE_MISMATCH = -2;   // input does not hold the described frame
+    public static final int STATUS_OUTPUT_TOO_SMALL = -3;
+    public static final int STATUS_NOT_DIRECT = -4;            // null or heap ByteBuffer where a direct one is needed
+    public static final int STATUS_OUT_OF_MEMORY = -5;
+    public static final int STATUS_INVALID_GRAPH = -6;         // null filter graph handle or unknown input format
+    public static final int STATUS_MALFORMED_FRAME = -7;       // encoded edge frame failed to decode
+
     // Gray processing (already existed)
     public static native byte[] processFrameToGray(
             byte[] inputRgba,
@@ -19,4 +31,161 @@ public class NativeBridge {
             int width,
             int height
     );
+
+    // In-place array variants: write the RGBA result into a caller-owned
+    // array of at least width * height * 4 bytes, so storage can be recycled
+    // across frames. Unlike the calls above, a wrongly sized input is reported
+    // as STATUS_INPUT_SIZE_MISMATCH instead of being passed through.
+    public static native int processFrameToGrayInto(
+            byte[] inputRgba,
+            byte[] outputRgba,
+            int width,
+            int height
+    );
+
+    public static native int processFrameToEdgesInto(
+            byte[] inputRgba,
+            byte[] outputRgba,
+            int width,
+            int height
+    );
+
+    // Zero-copy variants: both buffers must be direct and hold at least
+    // width * height * 4 bytes. OpenCV reads and writes them in place.
+    // Returns STATUS_OK or the reason nothing was written.
+    public static native int processFrameToGrayDirect(
+            ByteBuffer inputRgba,
+            ByteBuffer outputRgba,
+            int width,
+            int height
+    );
+
+    public static native int processFrameToEdgesDirect(
+            ByteBuffer inputRgba,
+            ByteBuffer outputRgba,
+            int width,
+            int height
+    );
+
+    // Single-channel output variants: input is direct RGBA, output is a direct
+    // buffer of width * height bytes meant for GLView.updateLuminanceFrame().
+    public static native int processFrameToGrayMono(
+            ByteBuffer inputRgba,
+            ByteBuffer outputGray,
+            int width,
+            int height
+    );
+
+    public static native int processFrameToEdgesMono(
+            ByteBuffer inputRgba,
+            ByteBuffer outputEdges,
+            int width,
+            int height
+    );
+
+    // Luma-plane variants: input is the Y plane of a YUV_420_888 image with
+    // the given row stride, output is a direct RGBA buffer of width * height * 4.
+    public static native int processLumaToGray(
+            ByteBuffer inputY,
+            int rowStride,
+            ByteBuffer outputRgba,
+            int width,
+            int height
+    );
+
+    public static native int processLumaToEdges(
+            ByteBuffer inputY,
+            int rowStride,
+            ByteBuffer outputRgba,
+            int width,
+            int height
+    );
+
+    // Luma-plane variants with single-channel output: the Y plane is read in
+    // place with its row stride (as delivered by Image.Plane.getRowStride(),
+    // no repacking) and the result is packed into width * height bytes.
+    // No colour conversion or RGBA expansion happens on this path.
+    public static native int processLumaToGrayMono(
+            ByteBuffer inputY,
+            int rowStride,
+            ByteBuffer outputGray,
+            int width,
+            int height
+    );
+
+    public static native int processLumaToEdgesMono(
+            ByteBuffer inputY,
+            int rowStride,
+            ByteBuffer outputEdges,
+            int width,
+            int height
+    );
+
+    // Number of threads used for native edge detection. The gradient pass is
+    // split into that many horizontal stripes and OpenCV's own thread pool is
+    // capped to the same count. Output is identical for any value >= 1.
+    public static native void setNumThreads(int threads);
+
+    public static native int getNumThreads();
+
+    // Number of native scratch Mat (re)allocations so far; constant once the
+    // processing threads are warmed up at the current resolution.
+    public static native long getScratchAllocationCount();
+
+    // Filter graphs, see FilterGraph. `ops` holds one opcode per stage and
+    // `params` FilterGraph.PARAMS_PER_STAGE floats per stage. Returns 0 if
+    // the descriptor is malformed.
+    public static native long createFilterGraph(int[] ops, float[] params);
+
+    public static native void releaseFilterGraph(long handle);
+
+    // Writes the output width and height for the given input size into outSize[0..1]
+    public static native int getFilterGraphOutputSize(
+            long handle,
+            int width,
+            int height,
+            int[] outSize
+    );
+
+    // Runs every stage on one frame. `format` is FilterGraph.INPUT_RGBA
+    // (rowStride is ignored) or FilterGraph.INPUT_LUMA; the output is a
+    // direct single-channel buffer of the graph's output size.
+    public static native int runFilterGraph(
+            long handle,
+            ByteBuffer input,
+            int format,
+            int rowStride,
+            ByteBuffer output,
+            int width,
+            int height
+    );
+
+    // Sparse edge frames, see pipeline.SparseEdgeFrame. Encodes a direct
+    // width * height edge mask (non-zero = edge) into `output`, which must
+    // hold SparseEdgeFrame.maxEncodedSize() bytes. With `previousMask` (the
+    // mask of the frame before, or null) the encoder may emit a delta frame.
+    // Returns the encoded length, or a negative STATUS_* code.
+    public static native int encodeEdgeFrame(
+            ByteBuffer mask,
+            ByteBuffer previousMask,
+            int width,
+            int height,
+            ByteBuffer output
+    );
+
+    // Decodes `length` bytes of an encoded frame into a direct buffer of
+    // width * height bytes (0 or 255, raw for gray frames). A delta frame is applied on top of
+    // what `output` holds, so keep decoding into the same buffer.
+    public static native int decodeEdgeFrame(
+            ByteBuffer encoded,
+            int length,
+            ByteBuffer output
+    );
+
+    // Edges of an org.opencv.core.Mat (8-bit gray, BGR or BGRA, as decoded
+    // by VideoCapture) into another, by Mat.getNativeObjAddr(). dst becomes
+    // a single-channel Mat of the same size; reuse it to avoid allocating.
+    // Same Canny as the frame calls above. The Mats must come from the same
+    // OpenCV build this library links against.
+    public static native int processMatToEdges(long srcAddr, long dstAddr);
 }
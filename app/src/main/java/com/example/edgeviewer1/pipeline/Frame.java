@@ -0,0 +1,27 @@
+package com.example.edgeviewer1.pipeline;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A camera frame travelling through the processing stage.
+ *
+ * Instances and their buffers are recycled by {@link FrameProcessor}, so
+ * nothing should hold on to a frame after it has been processed.
+ */
+public class Frame {
+
+    public enum Format {
+        // width * height * 4 bytes, tightly packed
+        RGBA,
+        // single channel (e.g. the Y plane), rowStride bytes per row
+        LUMA
+    }
+
+    public ByteBuffer buffer;
+    public Format format = Format.RGBA;
+    public int width;
+    public int height;
+    public int rowStride;
+    public long timestampNs;
+    public long frameId;      // sequence number, key into FrameTracer
+}
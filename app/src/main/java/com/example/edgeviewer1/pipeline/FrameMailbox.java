@@ -0,0 +1,131 @@
+package com.example.edgeviewer1.pipeline;
+
+/**
+ * Bounded hand-off between a frame producer and a single consumer thread.
+ *
+ * When the mailbox is full the {@link Policy} decides what happens to the
+ * incoming frame. Frames that get dropped are returned from {@link #offer}
+ * so the caller can recycle their buffers.
+ */
+public class FrameMailbox<T> {
+
+    public enum Policy {
+        // Evict the oldest queued frame: consumer always sees the freshest one
+        DROP_OLDEST,
+        // Reject the incoming frame: queued frames are kept in order
+        DROP_NEWEST,
+        // Wait for the consumer to make room (never drops)
+        BLOCK
+    }
+
+    private final Policy policy;
+    private final Object[] slots;
+
+    private int head = 0;    // next slot to take
+    private int count = 0;
+    private boolean closed = false;
+
+    private long droppedCount = 0;
+
+    public FrameMailbox(Policy policy, int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity must be >= 1, was " + capacity);
+        }
+        this.policy = policy;
+        this.slots = new Object[capacity];
+    }
+
+    /**
+     * Queues a frame. Returns the frame that was dropped to make room (or the
+     * rejected frame itself), or null if nothing was dropped.
+     */
+    public synchronized T offer(T frame) throws InterruptedException {
+        if (closed) {
+            return frame;
+        }
+
+        T dropped = null;
+
+        if (count == slots.length) {
+            switch (policy) {
+                case DROP_OLDEST:
+                    dropped = removeHead();
+                    break;
+                case DROP_NEWEST:
+                    droppedCount++;
+                    return frame;
+                case BLOCK:
+                    while (count == slots.length && !closed) {
+                        wait();
+                    }
+                    if (closed) {
+                        return frame;
+                    }
+                    break;
+            }
+        }
+
+        if (dropped != null) {
+            droppedCount++;
+        }
+
+        slots[(head + count) % slots.length] = frame;
+        count++;
+        notifyAll();
+        return dropped;
+    }
+
+    /**
+     * Blocks until a frame is available. Returns null once the mailbox is
+     * closed and drained.
+     */
+    public synchronized T take() throws InterruptedException {
+        while (count == 0 && !closed) {
+            wait();
+        }
+        if (count == 0) {
+            return null;
+        }
+        T frame = removeHead();
+        notifyAll();
+        return frame;
+    }
+
+    // Removes and returns a queued frame without waiting, or null if empty
+    public synchronized T poll() {
+        if (count == 0) {
+            return null;
+        }
+        T frame = removeHead();
+        notifyAll();
+        return frame;
+    }
+
+    // Wakes up blocked producers and the consumer; further offers are rejected
+    public synchronized void close() {
+        closed = true;
+        notifyAll();
+    }
+
+    // Accepts frames again after close(), e.g. when processing restarts
+    public synchronized void reopen() {
+        closed = false;
+    }
+
+    public synchronized int size() {
+        return count;
+    }
+
+    public synchronized long getDroppedCount() {
+        return droppedCount;
+    }
+
+    @SuppressWarnings("unchecked")
+    private T removeHead() {
+        T frame = (T) slots[head];
+        slots[head] = null;
+        head = (head + 1) % slots.length;
+        count--;
+        return frame;
+    }
+}
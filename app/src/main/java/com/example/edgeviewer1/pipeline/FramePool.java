@@ -0,0 +1,57 @@
+package com.example.edgeviewer1.pipeline;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+
+/**
+ * Pool of equally sized direct buffers for frame data.
+ *
+ * Buffers are allocated on first use and handed back with {@link #release}.
+ * The pool only drops its buffers when the requested size changes (i.e. the
+ * resolution changed), so once warmed up acquire/release never allocate.
+ */
+public class FramePool {
+
+    private final int maxBuffers;
+    private final ArrayDeque<ByteBuffer> freeBuffers;
+
+    private int bufferSize = 0;
+    private long allocationCount = 0;
+
+    public FramePool(int maxBuffers) {
+        this.maxBuffers = maxBuffers;
+        this.freeBuffers = new ArrayDeque<>(maxBuffers);
+    }
+
+    // Returns a cleared direct buffer with exactly `size` bytes of capacity
+    public synchronized ByteBuffer acquire(int size) {
+        if (size != bufferSize) {
+            // Resolution changed: the old buffers are useless now
+            freeBuffers.clear();
+            bufferSize = size;
+        }
+
+        ByteBuffer buffer = freeBuffers.pollFirst();
+        if (buffer == null) {
+            buffer = ByteBuffer.allocateDirect(size);
+            allocationCount++;
+        }
+        buffer.clear();
+        return buffer;
+    }
+
+    public synchronized void release(ByteBuffer buffer) {
+        if (buffer == null || buffer.capacity() != bufferSize) {
+            // Stale size from before a resolution change, let GC take it
+            return;
+        }
+        if (freeBuffers.size() < maxBuffers) {
+            freeBuffers.addFirst(buffer);
+        }
+    }
+
+    // Total number of buffers ever allocated by this pool
+    public synchronized long getAllocationCount() {
+        return allocationCount;
+    }
+}
@@ -0,0 +1,133 @@
+package com.example.edgeviewer1.pipeline;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs frame processing on its own thread, decoupled from the camera and
+ * UI threads by a {@link FrameMailbox}.
+ *
+ * Producers call {@link #obtainFrame}, fill it and {@link #submit} it. With
+ * {@link FrameMailbox.Policy#DROP_OLDEST} and a capacity of 1 a slow device
+ * always processes the freshest frame and latency stays bounded to about one
+ * frame instead of growing with a queue.
+ */
+public class FrameProcessor {
+
+    public interface Callback {
+        // Runs on the processing thread; the frame is recycled when this returns
+        void onProcessFrame(Frame frame);
+    }
+
+    private final FrameMailbox<Frame> mailbox;
+    private final FramePool framePool;
+    private final Callback callback;
+
+    private final ArrayDeque<Frame> freeFrames = new ArrayDeque<>();
+    private final AtomicLong processedCount = new AtomicLong();
+
+    private Thread thread = null;
+
+    public FrameProcessor(FrameMailbox.Policy policy,
+                          int capacity,
+                          FramePool framePool,
+                          Callback callback) {
+        this.mailbox = new FrameMailbox<>(policy, capacity);
+        this.framePool = framePool;
+        this.callback = callback;
+    }
+
+    public synchronized void start() {
+        if (thread != null) return;
+
+        // stop() closed it; the processor is restarted on every onResume
+        mailbox.reopen();
+        thread = new Thread(this::runLoop, "FrameProcessor");
+        thread.start();
+    }
+
+    public void stop() {
+        Thread t;
+        synchronized (this) {
+            t = thread;
+            thread = null;
+        }
+        if (t == null) return;
+
+        mailbox.close();
+        t.interrupt();
+        try {
+            t.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        // Return whatever was still queued
+        Frame frame;
+        while ((frame = mailbox.poll()) != null) {
+            recycle(frame);
+        }
+    }
+
+    // Returns a recycled frame whose buffer holds at least `size` bytes
+    public Frame obtainFrame(int size) {
+        Frame frame;
+        synchronized (freeFrames) {
+            frame = freeFrames.pollFirst();
+        }
+        if (frame == null) {
+            frame = new Frame();
+        }
+        frame.buffer = framePool.acquire(size);
+        return frame;
+    }
+
+    // Hands a filled frame to the processing thread (may drop or block per policy)
+    public void submit(Frame frame) {
+        Frame dropped;
+        try {
+            dropped = mailbox.offer(frame);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            dropped = frame;
+        }
+        if (dropped != null) {
+            recycle(dropped);
+        }
+    }
+
+    public long getProcessedCount() {
+        return processedCount.get();
+    }
+
+    public long getDroppedCount() {
+        return mailbox.getDroppedCount();
+    }
+
+    private void runLoop() {
+        while (true) {
+            Frame frame;
+            try {
+                frame = mailbox.take();
+            } catch (InterruptedException e) {
+                break;
+            }
+            if (frame == null) break;   // closed and drained
+
+            try {
+                callback.onProcessFrame(frame);
+                processedCount.incrementAndGet();
+            } finally {
+                recycle(frame);
+            }
+        }
+    }
+
+    private void recycle(Frame frame) {
+        framePool.release(frame.buffer);
+        frame.buffer = null;
+        synchronized (freeFrames) {
+            freeFrames.addFirst(frame);
+        }
+    }
+}
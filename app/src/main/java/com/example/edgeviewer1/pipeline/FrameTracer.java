@@ -0,0 +1,163 @@
+package com.example.edgeviewer1.pipeline;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Per-frame timestamps at each stage boundary of the camera → JNI → GL
+ * pipeline, kept in a fixed-size ring of the most recent frames.
+ *
+ * Recording ({@link #begin}, {@link #mark}) is allocation-free and lock-free,
+ * so it can be called from the camera, processing and GL threads on every
+ * frame. All timestamps must come from the same monotonic clock (the app
+ * uses SystemClock.elapsedRealtimeNanos(); camera timestamps are on it only
+ * with a REALTIME SENSOR_INFO_TIMESTAMP_SOURCE).
+ * Queries sort into preallocated scratch arrays and are meant for occasional
+ * use from one thread.
+ */
+public class FrameTracer {
+
+    // Stage boundaries, in pipeline order
+    public static final int STAGE_CAPTURE = 0;        // sensor exposure timestamp
+    public static final int STAGE_ACQUIRE = 1;        // frame reached the app
+    public static final int STAGE_NATIVE_ENTER = 2;   // processing thread enters JNI
+    public static final int STAGE_NATIVE_EXIT = 3;    // JNI returned
+    public static final int STAGE_UPLOAD = 4;         // texture upload done on GL thread
+    public static final int STAGE_SWAP = 5;           // draw submitted for presentation
+    public static final int STAGE_COUNT = 6;
+
+    private static final String[] STAGE_NAMES = {
+            "capture", "acquire", "queue", "native", "handoff", "draw"
+    };
+
+    private static final long NO_FRAME = -1;
+
+    private final int capacity;
+    private final AtomicLongArray frameIds;
+    private final AtomicLongArray timestamps;   // capacity * STAGE_COUNT
+
+    private final long[] scratch;
+
+    public FrameTracer(int capacity) {
+        this.capacity = capacity;
+        this.frameIds = new AtomicLongArray(capacity);
+        this.timestamps = new AtomicLongArray(capacity * STAGE_COUNT);
+        this.scratch = new long[capacity];
+        for (int i = 0; i < capacity; i++) {
+            frameIds.set(i, NO_FRAME);
+        }
+    }
+
+    // Starts a record for a new frame, overwriting the oldest one in the ring
+    public void begin(long frameId, long captureNs, long acquireNs) {
+        int slot = slotOf(frameId);
+        int base = slot * STAGE_COUNT;
+
+        // Invalidate first so readers never pair this id with stale stages
+        frameIds.set(slot, NO_FRAME);
+        for (int stage = 0; stage < STAGE_COUNT; stage++) {
+            timestamps.lazySet(base + stage, 0);
+        }
+        timestamps.lazySet(base + STAGE_CAPTURE, captureNs);
+        timestamps.lazySet(base + STAGE_ACQUIRE, acquireNs);
+        frameIds.set(slot, frameId);
+    }
+
+    // Records a stage boundary; ignored if the frame's record was already recycled
+    public void mark(long frameId, int stage, long timeNs) {
+        if (frameId < 0) return;
+
+        int slot = slotOf(frameId);
+        if (frameIds.get(slot) != frameId) return;
+        timestamps.lazySet(slot * STAGE_COUNT + stage, timeNs);
+    }
+
+    /**
+     * Percentile (0..100) of the time spent between stage - 1 and stage, over
+     * the frames in the ring that reached both. Returns -1 without samples.
+     */
+    public synchronized long stagePercentileNs(int stage, double percentile) {
+        if (stage <= STAGE_CAPTURE || stage >= STAGE_COUNT) {
+            throw new IllegalArgumentException("No interval ends at stage " + stage);
+        }
+        return percentileNs(stage - 1, stage, percentile);
+    }
+
+    // Percentile (0..100) of capture → swap, i.e. glass-to-glass latency
+    public synchronized long glassToGlassPercentileNs(double percentile) {
+        return percentileNs(STAGE_CAPTURE, STAGE_SWAP, percentile);
+    }
+
+    /**
+     * Writes the recorded frames as Chrome trace-event JSON, which both
+     * chrome://tracing and the Perfetto UI open directly. Each interval is a
+     * complete ("X") event on its own track.
+     */
+    public synchronized void writeChromeTrace(Writer out) throws IOException {
+        out.write("{\"traceEvents\":[");
+        boolean first = true;
+
+        for (int slot = 0; slot < capacity; slot++) {
+            long frameId = frameIds.get(slot);
+            if (frameId == NO_FRAME) continue;
+
+            int base = slot * STAGE_COUNT;
+            for (int stage = STAGE_ACQUIRE; stage < STAGE_COUNT; stage++) {
+                long start = timestamps.get(base + stage - 1);
+                long end = timestamps.get(base + stage);
+                if (start == 0 || end == 0 || end < start) continue;
+
+                if (!first) out.write(',');
+                first = false;
+
+                out.write("{\"name\":\"");
+                out.write(STAGE_NAMES[stage]);
+                out.write("\",\"ph\":\"X\",\"pid\":1,\"tid\":");
+                out.write(Integer.toString(stage));
+                out.write(",\"ts\":");
+                out.write(formatMicros(start));
+                out.write(",\"dur\":");
+                out.write(formatMicros(end - start));
+                out.write(",\"args\":{\"frame\":");
+                out.write(Long.toString(frameId));
+                out.write("}}");
+            }
+        }
+
+        out.write("],\"displayTimeUnit\":\"ms\"}");
+        out.flush();
+    }
+
+    private long percentileNs(int fromStage, int toStage, double percentile) {
+        int count = 0;
+        for (int slot = 0; slot < capacity; slot++) {
+            if (frameIds.get(slot) == NO_FRAME) continue;
+
+            int base = slot * STAGE_COUNT;
+            long start = timestamps.get(base + fromStage);
+            long end = timestamps.get(base + toStage);
+            if (start == 0 || end == 0 || end < start) continue;
+
+            scratch[count++] = end - start;
+        }
+        if (count == 0) return -1;
+
+        Arrays.sort(scratch, 0, count);
+        int index = (int) Math.ceil(percentile / 100.0 * count) - 1;
+        return scratch[Math.max(0, Math.min(count - 1, index))];
+    }
+
+    private int slotOf(long frameId) {
+        return (int) (frameId % capacity);
+    }
+
+    // Trace timestamps are in microseconds; keep sub-microsecond precision
+    private static String formatMicros(long nanos) {
+        long micros = nanos / 1000;
+        long fraction = nanos % 1000;
+        if (fraction == 0) return Long.toString(micros);
+        return micros + "." + (fraction < 10 ? "00" : fraction < 100 ? "0" : "") + fraction;
+    }
+}
@@ -0,0 +1,106 @@
+package com.example.edgeviewer1.pipeline;
+
+/**
+ * Picks the processing scale that keeps per-frame processing time within a
+ * frame budget.
+ *
+ * Processing times are smoothed with an exponential moving average. The
+ * governor steps to the next smaller scale once the average has stayed above
+ * the budget for DOWN_HOLD_FRAMES frames in a row. It steps back up only
+ * after the cost predicted at the larger scale (time grows with the pixel
+ * count, i.e. the square of the scale) has stayed below UP_HEADROOM of the
+ * budget for UP_HOLD_FRAMES frames. The gap between the two thresholds and
+ * the longer hold going up keep it from oscillating between two levels.
+ *
+ * Not thread-safe: feed and query it from the processing thread.
+ */
+public class ScaleGovernor {
+
+    private static final double SMOOTHING = 0.1;
+    private static final int DOWN_HOLD_FRAMES = 10;
+    private static final int UP_HOLD_FRAMES = 60;
+    private static final double UP_HEADROOM = 0.7;
+
+    private final float[] scales;
+    private final long budgetNs;
+
+    private int level;
+    private double averageNs = -1;
+    private int overBudgetFrames;
+    private int underBudgetFrames;
+    private long changeCount;
+
+    // scales must be in descending order, e.g. {1f, 0.75f, 0.5f}
+    public ScaleGovernor(float[] scales, long budgetNs) {
+        if (scales.length == 0) {
+            throw new IllegalArgumentException("At least one scale is needed");
+        }
+        for (int i = 1; i < scales.length; i++) {
+            if (scales[i] >= scales[i - 1]) {
+                throw new IllegalArgumentException("Scales must be descending");
+            }
+        }
+        this.scales = scales.clone();
+        this.budgetNs = budgetNs;
+    }
+
+    public void onFrameProcessed(long processingNs) {
+        if (averageNs < 0) {
+            averageNs = processingNs;
+        } else {
+            averageNs += SMOOTHING * (processingNs - averageNs);
+        }
+
+        if (averageNs > budgetNs) {
+            underBudgetFrames = 0;
+            if (++overBudgetFrames >= DOWN_HOLD_FRAMES && level < scales.length - 1) {
+                setLevel(level + 1);
+            }
+            return;
+        }
+        overBudgetFrames = 0;
+
+        if (level == 0) return;
+        double ratio = scales[level - 1] / scales[level];
+        double predictedNs = averageNs * ratio * ratio;
+        if (predictedNs < budgetNs * UP_HEADROOM) {
+            if (++underBudgetFrames >= UP_HOLD_FRAMES) {
+                setLevel(level - 1);
+            }
+        } else {
+            underBudgetFrames = 0;
+        }
+    }
+
+    // Index into the scales passed to the constructor
+    public int getLevel() {
+        return level;
+    }
+
+    public float getScale() {
+        return scales[level];
+    }
+
+    public long getChangeCount() {
+        return changeCount;
+    }
+
+    // Back to full scale, e.g. after a mode switch
+    public void reset() {
+        level = 0;
+        averageNs = -1;
+        overBudgetFrames = 0;
+        underBudgetFrames = 0;
+    }
+
+    private void setLevel(int newLevel) {
+        // Rescale the average to the new pixel count instead of starting over,
+        // so the next decision does not wait for a fresh warm-up
+        double ratio = scales[newLevel] / scales[level];
+        averageNs *= ratio * ratio;
+        level = newLevel;
+        overBudgetFrames = 0;
+        underBudgetFrames = 0;
+        changeCount++;
+    }
+}
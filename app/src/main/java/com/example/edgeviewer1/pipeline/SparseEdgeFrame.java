@@ -0,0 +1,268 @@
+package com.example.edgeviewer1.pipeline;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Compact single-channel frame format, see edge_codec.hpp for the layout.
+ * Binary masks are stored bit-packed or run-length coded, optionally as a
+ * delta against the previous frame, and decode to 0/255 bytes that
+ * GLView.updateLuminanceFrame() draws as is. Other gray frames are stored
+ * raw.
+ *
+ * NativeBridge.encodeEdgeFrame() writes it, and so does encode() here, which
+ * is what EdgeStreamServer sends to web-viewer/. encode() never writes delta
+ * frames: every message must decode on its own, since the server skips
+ * frames for slow viewers.
+ *
+ * The decoder is plain Java so a viewer or tool can read frames without the
+ * native library. It writes straight into the buffer that is uploaded as the
+ * GL_LUMINANCE texture; since delta frames are applied on top of the
+ * previous frame, keep decoding into the same buffer.
+ */
+public final class SparseEdgeFrame {
+
+    public static final int ENCODING_BITMASK = 0;
+    public static final int ENCODING_RLE = 1;
+    public static final int ENCODING_DELTA = 2;
+    public static final int ENCODING_GRAY = 3;
+
+    public static final int HEADER_SIZE = 8;
+
+    // Largest dimension the u16 header fields can describe
+    public static final int MAX_DIMENSION = 0xFFFF;
+
+    private static final int MAGIC = 'E';
+
+    private SparseEdgeFrame() {
+    }
+
+    // Largest encoded size of a width x height binary mask: header plus bitmask
+    public static int maxEncodedSize(int width, int height) {
+        return toBufferSize(HEADER_SIZE + (pixelCount(width, height) + 7) / 8);
+    }
+
+    // Bytes encode() may write for any width x height frame: header plus raw pixels
+    public static int maxMessageSize(int width, int height) {
+        return toBufferSize(HEADER_SIZE + pixelCount(width, height));
+    }
+
+    /**
+     * Encodes the single-channel frame at pixels[0 .. width * height) into
+     * out, which must hold maxMessageSize() bytes. Binary frames (0 and 255
+     * only) are run-length coded, or bit-packed if that is smaller; anything
+     * else is stored raw. The low 16 bits of sequence go into the header.
+     * Returns the encoded length.
+     */
+    public static int encode(byte[] pixels, int width, int height, long sequence, byte[] out) {
+        if (width <= 0 || height <= 0 || width > MAX_DIMENSION || height > MAX_DIMENSION) {
+            throw new IllegalArgumentException("Unsupported frame size " + width + "x" + height);
+        }
+        int count = maxMessageSize(width, height) - HEADER_SIZE;
+        int bitmaskSize = (count + 7) / 8;
+
+        int encoding;
+        int payloadSize = encodeRuns(pixels, count, out, HEADER_SIZE, HEADER_SIZE + bitmaskSize);
+        if (payloadSize >= 0) {
+            encoding = ENCODING_RLE;
+        } else if (payloadSize == RUNS_TOO_LONG) {
+            encoding = ENCODING_BITMASK;
+            payloadSize = bitmaskSize;
+            for (int i = 0; i < bitmaskSize; i++) {
+                out[HEADER_SIZE + i] = 0;
+            }
+            for (int i = 0; i < count; i++) {
+                if (pixels[i] != 0) {
+                    out[HEADER_SIZE + (i >>> 3)] |= (byte) (1 << (i & 7));
+                }
+            }
+        } else {
+            encoding = ENCODING_GRAY;
+            payloadSize = count;
+            System.arraycopy(pixels, 0, out, HEADER_SIZE, count);
+        }
+
+        out[0] = (byte) MAGIC;
+        out[1] = (byte) encoding;
+        out[2] = (byte) width;
+        out[3] = (byte) (width >>> 8);
+        out[4] = (byte) height;
+        out[5] = (byte) (height >>> 8);
+        out[6] = (byte) sequence;
+        out[7] = (byte) (sequence >>> 8);
+        return HEADER_SIZE + payloadSize;
+    }
+
+    // Header fields of the frame at encoded[position]; -1 if there is no valid header
+    public static int encoding(ByteBuffer encoded) {
+        if (encoded.remaining() < HEADER_SIZE) return -1;
+        int position = encoded.position();
+        int encoding = encoded.get(position + 1);
+        return encoded.get(position) == MAGIC && encoding >= ENCODING_BITMASK && encoding <= ENCODING_GRAY
+                ? encoding
+                : -1;
+    }
+
+    public static int width(ByteBuffer encoded) {
+        return readU16(encoded, encoded.position() + 2);
+    }
+
+    public static int height(ByteBuffer encoded) {
+        return readU16(encoded, encoded.position() + 4);
+    }
+
+    // Low 16 bits of the frame id; 0 from encoders that do not number frames
+    public static int sequence(ByteBuffer encoded) {
+        return readU16(encoded, encoded.position() + 6);
+    }
+
+    /**
+     * Decodes the frame between encoded's position and limit into the first
+     * width * height bytes of luminance. Positions are left untouched.
+     * Throws IllegalArgumentException for malformed frames or a luminance
+     * buffer that is too small.
+     */
+    public static void decode(ByteBuffer encoded, ByteBuffer luminance) {
+        int encoding = encoding(encoded);
+        if (encoding < 0) {
+            throw new IllegalArgumentException("Not an edge frame");
+        }
+        long pixelCount = pixelCount(width(encoded), height(encoded));
+        if (pixelCount == 0) {
+            throw new IllegalArgumentException("Empty edge frame");
+        }
+        if (luminance.capacity() < pixelCount) {
+            throw new IllegalArgumentException("Luminance buffer holds " + luminance.capacity()
+                    + " bytes, frame needs " + pixelCount);
+        }
+        int pixels = (int) pixelCount;
+
+        int start = encoded.position() + HEADER_SIZE;
+        int end = encoded.limit();
+
+        if (encoding == ENCODING_GRAY) {
+            if (end - start != pixels) {
+                throw new IllegalArgumentException("Gray payload is " + (end - start) + " bytes");
+            }
+            for (int i = 0; i < pixels; i++) {
+                luminance.put(i, encoded.get(start + i));
+            }
+            return;
+        }
+
+        if (encoding == ENCODING_BITMASK) {
+            if (end - start != (pixels + 7) / 8) {
+                throw new IllegalArgumentException("Bitmask is " + (end - start) + " bytes");
+            }
+            for (int i = 0; i < pixels; i++) {
+                int bit = encoded.get(start + (i >>> 3)) >>> (i & 7) & 1;
+                luminance.put(i, (byte) (bit != 0 ? 255 : 0));
+            }
+            return;
+        }
+
+        if (encoding == ENCODING_RLE) {
+            for (int i = 0; i < pixels; i++) {
+                luminance.put(i, (byte) 0);
+            }
+        }
+
+        int position = start;
+        int pixel = 0;
+        boolean value = false;
+        while (position < end) {
+            int run = 0;
+            int shift = 0;
+            int b;
+            do {
+                if (position == end || shift > 28) {
+                    throw new IllegalArgumentException("Malformed run length");
+                }
+                b = encoded.get(position++) & 0xFF;
+                run |= (b & 0x7F) << shift;
+                shift += 7;
+            } while ((b & 0x80) != 0);
+
+            if (run < 0 || run > pixels - pixel) {
+                throw new IllegalArgumentException("Runs exceed frame size");
+            }
+            if (value) {
+                for (int i = pixel; i < pixel + run; i++) {
+                    if (encoding == ENCODING_RLE) {
+                        luminance.put(i, (byte) 255);
+                    } else {
+                        // Changed since the previous frame
+                        luminance.put(i, (byte) (luminance.get(i) != 0 ? 0 : 255));
+                    }
+                }
+            }
+            pixel += run;
+            value = !value;
+        }
+        if (pixel != pixels) {
+            throw new IllegalArgumentException("Runs cover " + pixel + " of " + pixels + " pixels");
+        }
+    }
+
+    // Both dimensions fit in 16 bits, so their product can overflow an int
+    private static long pixelCount(int width, int height) {
+        if (width < 0 || height < 0) {
+            throw new IllegalArgumentException("Negative frame size " + width + "x" + height);
+        }
+        return (long) width * height;
+    }
+
+    private static int toBufferSize(long size) {
+        if (size > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Encoded frame of " + size + " bytes does not fit a buffer");
+        }
+        return (int) size;
+    }
+
+    private static final int NOT_BINARY = -1;
+    private static final int RUNS_TOO_LONG = -2;
+
+    // Writes the runs at out[start ..) and returns their length, or
+    // NOT_BINARY / RUNS_TOO_LONG once they would reach `limit`
+    private static int encodeRuns(byte[] pixels, int count, byte[] out, int start, int limit) {
+        int position = start;
+        byte value = 0;
+        int i = 0;
+        while (i < count) {
+            int runStart = i;
+            while (i < count && pixels[i] == value) {
+                i++;
+            }
+            if (i < count && pixels[i] != (byte) ~value) {
+                return NOT_BINARY;
+            }
+
+            int run = i - runStart;
+            do {
+                if (position == limit) {
+                    // Still tell gray frames apart, so they are not bit-packed
+                    return isBinary(pixels, i, count) ? RUNS_TOO_LONG : NOT_BINARY;
+                }
+                int b = run & 0x7F;
+                run >>>= 7;
+                out[position++] = (byte) (run != 0 ? b | 0x80 : b);
+            } while (run != 0);
+
+            value = (byte) ~value;
+        }
+        return position - start;
+    }
+
+    private static boolean isBinary(byte[] pixels, int from, int count) {
+        for (int i = from; i < count; i++) {
+            if (pixels[i] != 0 && pixels[i] != (byte) 255) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Little-endian, without touching the buffer's byte order
+    private static int readU16(ByteBuffer buffer, int index) {
+        return (buffer.get(index) & 0xFF) | (buffer.get(index + 1) & 0xFF) << 8;
+    }
+}
@@ -0,0 +1,64 @@
+package com.example.edgeviewer1.record;
+
+/**
+ * Encoder settings for {@link VideoRecorder}. Immutable; use {@link Builder}.
+ */
+public final class RecordingConfig {
+
+    public final int width;
+    public final int height;
+    public final int bitRate;            // bits per second
+    public final int frameRate;          // nominal; actual timestamps come from the renderer
+    public final int keyFrameIntervalSeconds;
+
+    private RecordingConfig(Builder builder) {
+        width = builder.width;
+        height = builder.height;
+        bitRate = builder.bitRate;
+        frameRate = builder.frameRate;
+        keyFrameIntervalSeconds = builder.keyFrameIntervalSeconds;
+    }
+
+    public static class Builder {
+        private int width = 1280;
+        private int height = 720;
+        private int bitRate = 6_000_000;
+        private int frameRate = 30;
+        private int keyFrameIntervalSeconds = 1;
+
+        // Encoded size; the view's content is scaled to fill it. AVC
+        // encoders want even dimensions, many want multiples of 16.
+        public Builder size(int width, int height) {
+            this.width = width;
+            this.height = height;
+            return this;
+        }
+
+        public Builder bitRate(int bitsPerSecond) {
+            this.bitRate = bitsPerSecond;
+            return this;
+        }
+
+        public Builder frameRate(int framesPerSecond) {
+            this.frameRate = framesPerSecond;
+            return this;
+        }
+
+        // GOP length; 0 makes every frame a key frame
+        public Builder keyFrameInterval(int seconds) {
+            this.keyFrameIntervalSeconds = seconds;
+            return this;
+        }
+
+        // Throws IllegalArgumentException for settings no encoder accepts
+        public RecordingConfig build() {
+            if (width <= 0 || height <= 0 || width % 2 != 0 || height % 2 != 0) {
+                throw new IllegalArgumentException("Size must be positive and even, was " + width + "x" + height);
+            }
+            if (bitRate <= 0 || frameRate <= 0 || keyFrameIntervalSeconds < 0) {
+                throw new IllegalArgumentException("Invalid bit rate, frame rate or key frame interval");
+            }
+            return new RecordingConfig(this);
+        }
+    }
+}
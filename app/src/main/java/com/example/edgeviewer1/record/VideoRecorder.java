@@ -0,0 +1,185 @@
+package com.example.edgeviewer1.record;
+
+import android.media.MediaCodec;
+import android.media.MediaCodecInfo;
+import android.media.MediaFormat;
+import android.media.MediaMuxer;
+import android.util.Log;
+import android.view.Surface;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Hardware H.264 encoder fed through its input {@link Surface}, muxed to MP4.
+ *
+ * GLView renders each shown frame a second time into the input surface
+ * (see GLView.startRecording()), so frames go from GPU to encoder without a
+ * CPU readback. A drain thread moves encoded buffers into the muxer.
+ *
+ * Rendering into the input surface blocks the GL thread once the encoder
+ * has no free input buffer. To keep the preview smooth, the renderer asks
+ * {@link #tryBeginFrame()} first and skips the frame while too many are in
+ * flight; those frames are counted as dropped.
+ */
+public class VideoRecorder {
+
+    private static final String TAG = "VideoRecorder";
+
+    private static final String MIME_TYPE = MediaFormat.MIMETYPE_VIDEO_AVC;
+    private static final long DRAIN_TIMEOUT_US = 10_000;
+
+    // Frames submitted to the encoder but not yet out of it. Hardware
+    // encoders typically hold 2-4 frames; beyond this one is falling behind.
+    private static final int MAX_FRAMES_IN_FLIGHT = 6;
+
+    // No output this long after the last submitted frame means the encoder
+    // dropped or merged the frames still counted in flight. Far beyond any
+    // encoder latency, so a merely busy encoder is never mistaken for one.
+    private static final long IDLE_RESET_NS = 1_000_000_000L;
+
+    private final RecordingConfig config;
+    private final MediaCodec encoder;
+    private final MediaMuxer muxer;
+    private final Surface inputSurface;
+    private final Thread drainThread;
+
+    private final AtomicInteger framesInFlight = new AtomicInteger();
+    private final AtomicLong lastSubmitNs = new AtomicLong();
+    private final AtomicLong encodedFrames = new AtomicLong();
+    private final AtomicLong droppedFrames = new AtomicLong();
+
+    private int trackIndex = -1;   // drain thread only
+    private boolean stopped = false;
+
+    public VideoRecorder(RecordingConfig config, File output) throws IOException {
+        this.config = config;
+
+        MediaFormat format = MediaFormat.createVideoFormat(MIME_TYPE, config.width, config.height);
+        format.setInteger(MediaFormat.KEY_COLOR_FORMAT,
+                MediaCodecInfo.CodecCapabilities.COLOR_FormatSurface);
+        format.setInteger(MediaFormat.KEY_BIT_RATE, config.bitRate);
+        format.setInteger(MediaFormat.KEY_FRAME_RATE, config.frameRate);
+        format.setInteger(MediaFormat.KEY_I_FRAME_INTERVAL, config.keyFrameIntervalSeconds);
+
+        encoder = MediaCodec.createEncoderByType(MIME_TYPE);
+        try {
+            encoder.configure(format, null, null, MediaCodec.CONFIGURE_FLAG_ENCODE);
+            inputSurface = encoder.createInputSurface();
+            encoder.start();
+            muxer = new MediaMuxer(output.getAbsolutePath(), MediaMuxer.OutputFormat.MUXER_OUTPUT_MPEG_4);
+        } catch (IOException | RuntimeException e) {
+            encoder.release();
+            throw e instanceof IOException ? (IOException) e : new IOException(e);
+        }
+
+        drainThread = new Thread(this::drainLoop, "VideoRecorderDrain");
+        drainThread.start();
+    }
+
+    public RecordingConfig getConfig() {
+        return config;
+    }
+
+    // Target for an EGL window surface on the rendering thread
+    public Surface getInputSurface() {
+        return inputSurface;
+    }
+
+    /**
+     * Called by the renderer before it draws a frame into the input surface.
+     * Returns false (and counts a dropped frame) while the encoder is too far
+     * behind to take another one without stalling the renderer.
+     */
+    public boolean tryBeginFrame() {
+        if (framesInFlight.get() >= MAX_FRAMES_IN_FLIGHT) {
+            droppedFrames.incrementAndGet();
+            return false;
+        }
+        lastSubmitNs.set(System.nanoTime());
+        framesInFlight.incrementAndGet();
+        return true;
+    }
+
+    public long getEncodedFrameCount() {
+        return encodedFrames.get();
+    }
+
+    // Frames the renderer skipped because the encoder was behind
+    public long getDroppedFrameCount() {
+        return droppedFrames.get();
+    }
+
+    /**
+     * Ends the stream, waits for the last frames to be written and finalizes
+     * the file. The renderer must no longer draw into the input surface.
+     */
+    public synchronized void stop() {
+        if (stopped) return;
+        stopped = true;
+
+        encoder.signalEndOfInputStream();
+        try {
+            drainThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        encoder.stop();
+        encoder.release();
+        inputSurface.release();
+        if (trackIndex >= 0) {
+            muxer.stop();
+        }
+        muxer.release();
+    }
+
+    private void drainLoop() {
+        MediaCodec.BufferInfo info = new MediaCodec.BufferInfo();
+        while (true) {
+            int index = encoder.dequeueOutputBuffer(info, DRAIN_TIMEOUT_US);
+            if (index == MediaCodec.INFO_TRY_AGAIN_LATER) {
+                // A timeout alone says nothing: the encoder may still be
+                // working on the frames. Only after a long idle gap forget
+                // frames it dropped or merged internally, so they do not
+                // throttle us forever.
+                if (framesInFlight.get() > 0 && System.nanoTime() - lastSubmitNs.get() > IDLE_RESET_NS) {
+                    framesInFlight.set(0);
+                }
+                continue;
+            }
+            if (index == MediaCodec.INFO_OUTPUT_FORMAT_CHANGED) {
+                // Arrives once, before the first frame, with the codec config
+                trackIndex = muxer.addTrack(encoder.getOutputFormat());
+                muxer.start();
+                continue;
+            }
+            if (index < 0) {
+                continue;
+            }
+
+            ByteBuffer data = encoder.getOutputBuffer(index);
+            boolean config = (info.flags & MediaCodec.BUFFER_FLAG_CODEC_CONFIG) != 0;
+            if (data != null && info.size > 0 && !config) {
+                if (trackIndex >= 0) {
+                    data.position(info.offset);
+                    data.limit(info.offset + info.size);
+                    muxer.writeSampleData(trackIndex, data, info);
+                } else {
+                    Log.w(TAG, "Frame before output format, dropped");
+                }
+                encodedFrames.incrementAndGet();
+                framesInFlight.updateAndGet(n -> Math.max(0, n - 1));
+            }
+            encoder.releaseOutputBuffer(index, false);
+
+            if ((info.flags & MediaCodec.BUFFER_FLAG_END_OF_STREAM) != 0) {
+                framesInFlight.set(0);
+                break;
+            }
+        }
+    }
+}
@@ -0,0 +1,538 @@
+package com.example.edgeviewer1.stream;
+
+import com.example.edgeviewer1.pipeline.SparseEdgeFrame;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Inet4Address;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.NetworkInterface;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.Locale;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * WebSocket endpoint streaming processed single-channel frames to any number
+ * of viewers (see web-viewer/), in the {@link SparseEdgeFrame} format.
+ *
+ * The processing thread only copies the frame into a hand-off slot in
+ * {@link #publish}; a separate encoder thread encodes it once and shares the
+ * resulting WebSocket message with every client. Each client has a one-frame
+ * slot drained by its own sender thread: a client that cannot keep up skips
+ * to the newest frame instead of queueing, so a slow network never adds
+ * latency or memory, nor slows down the other clients or the camera.
+ *
+ * There is no authentication, so by default the server only listens on
+ * loopback and viewers connect through {@code adb forward}; listening on the
+ * LAN has to be asked for explicitly.
+ */
+public class EdgeStreamServer {
+
+    public static final int DEFAULT_PORT = 8080;
+
+    private static final String WEBSOCKET_GUID = "258EAFA5-E914-47DA-95CA-C5AB0DC85B11";
+    private static final int HANDSHAKE_TIMEOUT_MS = 5000;
+    private static final int MAX_HANDSHAKE_BYTES = 8192;
+
+    // Keeps the kernel from buffering many frames behind our back, which
+    // would turn "drop" back into "queue"
+    private static final int SEND_BUFFER_BYTES = 64 * 1024;
+
+    // Room for the largest WebSocket frame header in front of each message
+    private static final int MAX_FRAME_HEADER = 10;
+
+    // An encoded frame as ready-to-send WebSocket frame, shared by all clients
+    private static final class Message {
+        final byte[] data;
+        final int offset;
+
+        Message(byte[] data, int offset) {
+            this.data = data;
+            this.offset = offset;
+        }
+    }
+
+    private final int requestedPort;
+    private final boolean lanAccess;
+    private final CopyOnWriteArrayList<Client> clients = new CopyOnWriteArrayList<>();
+
+    // Processing -> encoder hand-off, guarded by frameLock. Two arrays so
+    // publish() only waits for a copy, never for an encode.
+    private final Object frameLock = new Object();
+    private byte[] pendingPixels = new byte[0];
+    private byte[] encodePixels = new byte[0];
+    private int pendingWidth;
+    private int pendingHeight;
+    private long pendingSequence;
+    private boolean framePending = false;
+    private boolean running = false;
+
+    private byte[] encodeScratch = new byte[0];   // encoder thread only
+
+    private final AtomicLong encodedFrames = new AtomicLong();
+    private final AtomicLong droppedFrames = new AtomicLong();
+
+    private ServerSocket serverSocket = null;
+    private Thread acceptThread = null;
+    private Thread encoderThread = null;
+
+    // Loopback only; port 0 picks a free port, see getPort()
+    public EdgeStreamServer(int port) {
+        this(port, false);
+    }
+
+    // lanAccess: listen on every interface, reachable by anyone on the network
+    public EdgeStreamServer(int port, boolean lanAccess) {
+        this.requestedPort = port;
+        this.lanAccess = lanAccess;
+    }
+
+    public synchronized void start() throws IOException {
+        if (serverSocket != null) return;
+
+        ServerSocket socket = new ServerSocket();
+        socket.setReuseAddress(true);
+        socket.bind(lanAccess
+                ? new InetSocketAddress(requestedPort)
+                : new InetSocketAddress(InetAddress.getLoopbackAddress(), requestedPort));
+        serverSocket = socket;
+
+        synchronized (frameLock) {
+            running = true;
+            framePending = false;
+        }
+        acceptThread = new Thread(() -> acceptLoop(socket), "EdgeStreamAccept");
+        encoderThread = new Thread(this::encodeLoop, "EdgeStreamEncoder");
+        acceptThread.start();
+        encoderThread.start();
+    }
+
+    public void stop() {
+        ServerSocket socket;
+        Thread accept;
+        Thread encoder;
+        synchronized (this) {
+            socket = serverSocket;
+            accept = acceptThread;
+            encoder = encoderThread;
+            serverSocket = null;
+            acceptThread = null;
+            encoderThread = null;
+        }
+        if (socket == null) return;
+
+        synchronized (frameLock) {
+            // Clients register under this lock, so none can slip in after
+            running = false;
+            frameLock.notifyAll();
+        }
+        closeQuietly(socket);
+        for (Client client : clients) {
+            client.close();
+        }
+        try {
+            accept.join();
+            encoder.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public synchronized int getPort() {
+        return serverSocket != null ? serverSocket.getLocalPort() : -1;
+    }
+
+    public boolean isLanAccess() {
+        return lanAccess;
+    }
+
+    /**
+     * Where viewers connect, e.g. "ws://192.168.1.20:8080"; the loopback
+     * address unless LAN access was asked for. null while stopped, or when
+     * no LAN address is up.
+     */
+    public synchronized String getUrl() {
+        if (serverSocket == null) return null;
+
+        InetAddress host = lanAccess ? findLanAddress() : InetAddress.getLoopbackAddress();
+        if (host == null) return null;
+        return "ws://" + host.getHostAddress() + ":" + serverSocket.getLocalPort();
+    }
+
+    // First IPv4 site-local address of an interface that is up, typically Wi-Fi
+    private static InetAddress findLanAddress() {
+        try {
+            Enumeration<NetworkInterface> networks = NetworkInterface.getNetworkInterfaces();
+            if (networks == null) return null;
+
+            for (NetworkInterface network : Collections.list(networks)) {
+                if (!network.isUp() || network.isLoopback()) continue;
+
+                for (InetAddress address : Collections.list(network.getInetAddresses())) {
+                    if (address instanceof Inet4Address && address.isSiteLocalAddress()) {
+                        return address;
+                    }
+                }
+            }
+        } catch (IOException e) {
+            // No interfaces to report
+        }
+        return null;
+    }
+
+    public int getClientCount() {
+        return clients.size();
+    }
+
+    public long getEncodedFrameCount() {
+        return encodedFrames.get();
+    }
+
+    // Frames skipped for a slow client or a busy encoder, over all clients
+    public long getDroppedFrameCount() {
+        return droppedFrames.get();
+    }
+
+    /**
+     * Hands a single-channel frame (width * height bytes from index 0) to the
+     * encoder. Copies the pixels and returns; the buffer can be reused right
+     * away. Does nothing while no viewer is connected.
+     */
+    public void publish(ByteBuffer pixels, int width, int height, long frameId) {
+        if (clients.isEmpty()) return;
+
+        int count = width * height;
+        synchronized (frameLock) {
+            if (!running) return;
+
+            if (framePending) {
+                // Encoder has not picked up the previous one yet
+                droppedFrames.incrementAndGet();
+            }
+            if (pendingPixels.length < count) {
+                pendingPixels = new byte[count];
+            }
+            ByteBuffer source = pixels.duplicate();
+            source.clear();
+            source.get(pendingPixels, 0, count);
+
+            pendingWidth = width;
+            pendingHeight = height;
+            pendingSequence = frameId;
+            framePending = true;
+            frameLock.notifyAll();
+        }
+    }
+
+    private void encodeLoop() {
+        while (true) {
+            int width;
+            int height;
+            long sequence;
+            synchronized (frameLock) {
+                while (running && !framePending) {
+                    try {
+                        frameLock.wait();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                if (!running) return;
+
+                byte[] swap = encodePixels;
+                encodePixels = pendingPixels;
+                pendingPixels = swap;
+                width = pendingWidth;
+                height = pendingHeight;
+                sequence = pendingSequence;
+                framePending = false;
+            }
+
+            int maxSize = MAX_FRAME_HEADER + SparseEdgeFrame.maxMessageSize(width, height);
+            if (encodeScratch.length < maxSize) {
+                encodeScratch = new byte[maxSize];
+            }
+            int length;
+            try {
+                length = SparseEdgeFrame.encode(encodePixels, width, height, sequence, encodeScratch);
+            } catch (IllegalArgumentException e) {
+                continue;   // frame too large for the format
+            }
+
+            // Exactly-sized copy: this array is what every client holds on to
+            byte[] data = new byte[MAX_FRAME_HEADER + length];
+            System.arraycopy(encodeScratch, 0, data, MAX_FRAME_HEADER, length);
+            Message message = new Message(data, writeFrameHeader(data, length));
+            encodedFrames.incrementAndGet();
+
+            for (Client client : clients) {
+                client.offer(message);
+            }
+        }
+    }
+
+    private void acceptLoop(ServerSocket socket) {
+        while (!socket.isClosed()) {
+            Socket connection;
+            try {
+                connection = socket.accept();
+            } catch (IOException e) {
+                break;   // closed by stop()
+            }
+            Client client = new Client(connection);
+            new Thread(client::readLoop, "EdgeStreamClient").start();
+        }
+    }
+
+    // Binary frame, FIN set, unmasked (server to client). Written right before
+    // the payload at data[MAX_FRAME_HEADER]; returns where the frame starts.
+    private static int writeFrameHeader(byte[] data, int payloadLength) {
+        int start;
+        if (payloadLength < 126) {
+            start = MAX_FRAME_HEADER - 2;
+            data[start + 1] = (byte) payloadLength;
+        } else if (payloadLength <= 0xFFFF) {
+            start = MAX_FRAME_HEADER - 4;
+            data[start + 1] = 126;
+            data[start + 2] = (byte) (payloadLength >>> 8);
+            data[start + 3] = (byte) payloadLength;
+        } else {
+            start = 0;
+            data[1] = 127;
+            for (int i = 0; i < 8; i++) {
+                data[2 + i] = (byte) ((long) payloadLength >>> (56 - 8 * i));
+            }
+        }
+        data[start] = (byte) 0x82;
+        return start;
+    }
+
+    private final class Client {
+
+        private final Socket socket;
+
+        // Newest frame not yet sent, guarded by this
+        private Message latest = null;
+        private boolean closed = false;
+
+        Client(Socket socket) {
+            this.socket = socket;
+        }
+
+        // Encoder thread: replaces an unsent frame instead of queueing behind it
+        synchronized void offer(Message message) {
+            if (closed) return;
+            if (latest != null) {
+                droppedFrames.incrementAndGet();
+            }
+            latest = message;
+            notifyAll();
+        }
+
+        void close() {
+            synchronized (this) {
+                if (closed) return;
+                closed = true;
+                latest = null;
+                notifyAll();
+            }
+            clients.remove(this);
+            closeQuietly(socket);
+        }
+
+        // Handshake, then watch the connection until the viewer goes away.
+        // Frames from the viewer carry nothing we need; only close matters.
+        void readLoop() {
+            try {
+                socket.setTcpNoDelay(true);
+                socket.setSendBufferSize(SEND_BUFFER_BYTES);
+                socket.setSoTimeout(HANDSHAKE_TIMEOUT_MS);
+                InputStream in = new BufferedInputStream(socket.getInputStream());
+                if (!handshake(in, socket.getOutputStream())) {
+                    closeQuietly(socket);
+                    return;
+                }
+                socket.setSoTimeout(0);
+
+                synchronized (frameLock) {
+                    if (!running) {
+                        closeQuietly(socket);
+                        return;
+                    }
+                    clients.add(this);
+                }
+                new Thread(this::sendLoop, "EdgeStreamSender").start();
+
+                while (skipClientFrame(in)) {
+                    // keep reading
+                }
+            } catch (IOException ignored) {
+                // Viewer vanished or sent garbage; either way it is gone
+            }
+            close();
+        }
+
+        private void sendLoop() {
+            try {
+                OutputStream out = socket.getOutputStream();
+                while (true) {
+                    Message message;
+                    synchronized (this) {
+                        while (!closed && latest == null) {
+                            wait();
+                        }
+                        if (closed) return;
+                        message = latest;
+                        latest = null;
+                    }
+                    // Blocks while the viewer is slow; newer frames replace
+                    // `latest` meanwhile
+                    out.write(message.data, message.offset, message.data.length - message.offset);
+                    out.flush();
+                }
+            } catch (IOException | InterruptedException e) {
+                close();
+            }
+        }
+    }
+
+    // Reads the HTTP upgrade request and answers it. Returns false (after
+    // sending an error status) for anything but a WebSocket upgrade.
+    private static boolean handshake(InputStream in, OutputStream out) throws IOException {
+        String key = null;
+        boolean upgrade = false;
+
+        String line = readLine(in);
+        if (line == null || !line.startsWith("GET ")) {
+            sendStatus(out, "400 Bad Request");
+            return false;
+        }
+        while ((line = readLine(in)) != null && !line.isEmpty()) {
+            int colon = line.indexOf(':');
+            if (colon < 0) continue;
+            String name = line.substring(0, colon).trim().toLowerCase(Locale.ROOT);
+            String value = line.substring(colon + 1).trim();
+            if (name.equals("sec-websocket-key")) {
+                key = value;
+            } else if (name.equals("upgrade")) {
+                upgrade = value.equalsIgnoreCase("websocket");
+            }
+        }
+        if (line == null || key == null || !upgrade) {
+            sendStatus(out, "400 Bad Request");
+            return false;
+        }
+
+        String response = "HTTP/1.1 101 Switching Protocols\r\n"
+                + "Upgrade: websocket\r\n"
+                + "Connection: Upgrade\r\n"
+                + "Sec-WebSocket-Accept: " + acceptKey(key) + "\r\n"
+                + "\r\n";
+        out.write(response.getBytes(StandardCharsets.US_ASCII));
+        out.flush();
+        return true;
+    }
+
+    static String acceptKey(String key) {
+        try {
+            MessageDigest sha1 = MessageDigest.getInstance("SHA-1");
+            byte[] digest = sha1.digest((key + WEBSOCKET_GUID).getBytes(StandardCharsets.US_ASCII));
+            return base64(digest);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-1 unavailable", e);
+        }
+    }
+
+    // java.util.Base64 needs API 26, android.util.Base64 does not exist in
+    // local unit tests; a digest is all we ever encode
+    private static String base64(byte[] bytes) {
+        final String alphabet = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/";
+        StringBuilder sb = new StringBuilder((bytes.length + 2) / 3 * 4);
+        for (int i = 0; i < bytes.length; i += 3) {
+            int b = (bytes[i] & 0xFF) << 16;
+            if (i + 1 < bytes.length) b |= (bytes[i + 1] & 0xFF) << 8;
+            if (i + 2 < bytes.length) b |= bytes[i + 2] & 0xFF;
+            sb.append(alphabet.charAt(b >>> 18 & 0x3F));
+            sb.append(alphabet.charAt(b >>> 12 & 0x3F));
+            sb.append(i + 1 < bytes.length ? alphabet.charAt(b >>> 6 & 0x3F) : '=');
+            sb.append(i + 2 < bytes.length ? alphabet.charAt(b & 0x3F) : '=');
+        }
+        return sb.toString();
+    }
+
+    // Consumes one frame from the viewer. Returns false on close or EOF.
+    private static boolean skipClientFrame(InputStream in) throws IOException {
+        int b0 = in.read();
+        int b1 = in.read();
+        if (b0 < 0 || b1 < 0) return false;
+        if ((b0 & 0x0F) == 0x8) return false;   // close
+
+        long length = b1 & 0x7F;
+        int extra = length == 126 ? 2 : length == 127 ? 8 : 0;
+        if (extra > 0) {
+            length = 0;
+            for (int i = 0; i < extra; i++) {
+                int b = in.read();
+                if (b < 0) return false;
+                length = length << 8 | b;
+            }
+        }
+        if ((b1 & 0x80) != 0) {
+            length += 4;   // masking key
+        }
+        while (length > 0) {
+            long skipped = in.skip(length);
+            if (skipped <= 0) {
+                if (in.read() < 0) return false;
+                skipped = 1;
+            }
+            length -= skipped;
+        }
+        return true;
+    }
+
+    private static String readLine(InputStream in) throws IOException {
+        StringBuilder sb = new StringBuilder();
+        int c;
+        try {
+            while ((c = in.read()) >= 0) {
+                if (c == '\n') {
+                    int end = sb.length();
+                    if (end > 0 && sb.charAt(end - 1) == '\r') sb.setLength(end - 1);
+                    return sb.toString();
+                }
+                if (sb.length() == MAX_HANDSHAKE_BYTES) return null;
+                sb.append((char) c);
+            }
+        } catch (SocketTimeoutException e) {
+            return null;
+        }
+        return null;
+    }
+
+    private static void sendStatus(OutputStream out, String status) throws IOException {
+        out.write(("HTTP/1.1 " + status + "\r\nConnection: close\r\n\r\n")
+                .getBytes(StandardCharsets.US_ASCII));
+        out.flush();
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        try {
+            closeable.close();
+        } catch (IOException ignored) {
+        }
+    }
+}
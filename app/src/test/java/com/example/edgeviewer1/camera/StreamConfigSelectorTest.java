@@ -0,0 +1,88 @@
+package com.example.edgeviewer1.camera;
+
+import com.example.edgeviewer1.camera.StreamConfigSelector.Policy;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class StreamConfigSelectorTest {
+
+    // A typical back camera: 16:9 and 4:3 sizes, full-size readout at 15 fps
+    private static final int[] WIDTHS = {3840, 4032, 1920, 1440, 1280, 960, 640, 320};
+    private static final int[] HEIGHTS = {2160, 3024, 1080, 1080, 720, 720, 480, 240};
+    private static final long[] MIN_DURATIONS = {
+            33_333_333, 66_666_666, 16_666_666, 16_666_666, 16_666_666, 16_666_666, 16_666_666, 16_666_666
+    };
+
+    private static final int[] FPS_LOWERS = {15, 7, 30, 15, 60};
+    private static final int[] FPS_UPPERS = {15, 30, 30, 60, 60};
+
+    private static final int FHD_PIXELS = 1920 * 1080;
+
+    private static String size(int index) {
+        return WIDTHS[index] + "x" + HEIGHTS[index];
+    }
+
+    @Test
+    public void maxFps_prefersFixedHighestRange() {
+        int range = StreamConfigSelector.selectFpsRange(FPS_LOWERS, FPS_UPPERS, Policy.MAX_FPS);
+        assertEquals(60, FPS_LOWERS[range]);
+        assertEquals(60, FPS_UPPERS[range]);
+    }
+
+    @Test
+    public void maxResolution_capsRangeAt30AndAvoidsLowMinimum() {
+        int range = StreamConfigSelector.selectFpsRange(FPS_LOWERS, FPS_UPPERS, Policy.MAX_RESOLUTION);
+        assertEquals(30, FPS_LOWERS[range]);
+        assertEquals(30, FPS_UPPERS[range]);
+    }
+
+    @Test
+    public void onlyFastRanges_resolutionPolicyTakesSlowest() {
+        int range = StreamConfigSelector.selectFpsRange(
+                new int[]{60, 120}, new int[]{60, 120}, Policy.MAX_RESOLUTION);
+        assertEquals(0, range);
+    }
+
+    @Test
+    public void maxFps_matchesPortraitViewAspect() {
+        int index = StreamConfigSelector.selectSize(
+                WIDTHS, HEIGHTS, MIN_DURATIONS, 1080, 1920, FHD_PIXELS, 60, Policy.MAX_FPS);
+        assertEquals("1920x1080", size(index));
+    }
+
+    @Test
+    public void minLatency_picksSmallestCoveringHalfTheView() {
+        int index = StreamConfigSelector.selectSize(
+                WIDTHS, HEIGHTS, MIN_DURATIONS, 1080, 1920, FHD_PIXELS, 60, Policy.MIN_LATENCY);
+        assertEquals("1280x720", size(index));
+    }
+
+    @Test
+    public void maxResolution_staysWithinPixelBudgetAndFrameRate() {
+        // 4032x3024 is larger, but 4:3 and limited to 15 fps
+        int index = StreamConfigSelector.selectSize(
+                WIDTHS, HEIGHTS, MIN_DURATIONS, 1080, 1920, 3840 * 2160, 30, Policy.MAX_RESOLUTION);
+        assertEquals("3840x2160", size(index));
+
+        index = StreamConfigSelector.selectSize(
+                WIDTHS, HEIGHTS, MIN_DURATIONS, 1080, 1920, 1280 * 720, 30, Policy.MAX_RESOLUTION);
+        assertEquals("1280x720", size(index));
+    }
+
+    @Test
+    public void noAspectMatch_fallsBackToAnySize() {
+        int index = StreamConfigSelector.selectSize(
+                new int[]{640, 1440}, new int[]{480, 1080}, new long[]{0, 0},
+                1080, 1920, FHD_PIXELS, 30, Policy.MAX_FPS);
+        assertEquals(1, index);
+    }
+
+    @Test
+    public void nothingWithinBudget_picksSmallest() {
+        int index = StreamConfigSelector.selectSize(
+                WIDTHS, HEIGHTS, MIN_DURATIONS, 1080, 1920, 100, 30, Policy.MAX_FPS);
+        assertEquals("320x240", size(index));
+    }
+}
@@ -0,0 +1,51 @@
+package com.example.edgeviewer1.gl;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class EdgeParityTest {
+
+    private static final int W = 16;
+    private static final int H = 12;
+
+    private static byte[] verticalEdge(int x) {
+        byte[] edges = new byte[W * H];
+        for (int y = 0; y < H; y++) {
+            edges[y * W + x] = (byte) 255;
+        }
+        return edges;
+    }
+
+    @Test
+    public void identicalMaps_match() {
+        assertEquals(0, EdgeParity.countMismatches(verticalEdge(8), verticalEdge(8), W, H));
+    }
+
+    @Test
+    public void edgeOnePixelOff_isWithinNeighbourhood() {
+        assertEquals(0, EdgeParity.countMismatches(verticalEdge(8), verticalEdge(7), W, H));
+    }
+
+    @Test
+    public void edgeTwoPixelsOff_mismatchesOnBothSides() {
+        int mismatches = EdgeParity.countMismatches(verticalEdge(8), verticalEdge(6), W, H);
+
+        assertEquals(2 * H, mismatches);
+        assertEquals(2 * H, EdgeParity.countEdges(verticalEdge(8), verticalEdge(6), W * H));
+        assertFalse(EdgeParity.isWithinTolerance(mismatches, 2 * H));
+    }
+
+    @Test
+    public void extraEdgePixels_areCountedAgainstTolerance() {
+        byte[] gpu = verticalEdge(8);
+        gpu[0] = (byte) 255;   // stray edge far from the line
+
+        int mismatches = EdgeParity.countMismatches(verticalEdge(8), gpu, W, H);
+        int edgePixels = EdgeParity.countEdges(verticalEdge(8), gpu, W * H);
+
+        assertEquals(1, mismatches);
+        assertEquals(H + 1, edgePixels);
+        assertTrue(EdgeParity.isWithinTolerance(mismatches, edgePixels));
+    }
+}
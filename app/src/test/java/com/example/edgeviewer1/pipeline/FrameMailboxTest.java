@@ -0,0 +1,94 @@
+package com.example.edgeviewer1.pipeline;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class FrameMailboxTest {
+
+    @Test
+    public void dropOldest_keepsFreshestFrame() throws InterruptedException {
+        FrameMailbox<Integer> mailbox = new FrameMailbox<>(FrameMailbox.Policy.DROP_OLDEST, 1);
+
+        assertNull(mailbox.offer(1));
+        assertEquals(Integer.valueOf(1), mailbox.offer(2));
+        assertEquals(Integer.valueOf(2), mailbox.offer(3));
+
+        assertEquals(Integer.valueOf(3), mailbox.take());
+        assertEquals(2, mailbox.getDroppedCount());
+    }
+
+    @Test
+    public void dropNewest_rejectsIncomingFrame() throws InterruptedException {
+        FrameMailbox<Integer> mailbox = new FrameMailbox<>(FrameMailbox.Policy.DROP_NEWEST, 2);
+
+        assertNull(mailbox.offer(1));
+        assertNull(mailbox.offer(2));
+        assertEquals(Integer.valueOf(3), mailbox.offer(3));
+
+        assertEquals(Integer.valueOf(1), mailbox.take());
+        assertEquals(Integer.valueOf(2), mailbox.take());
+        assertEquals(1, mailbox.getDroppedCount());
+    }
+
+    @Test
+    public void block_waitsForConsumer() throws Exception {
+        FrameMailbox<Integer> mailbox = new FrameMailbox<>(FrameMailbox.Policy.BLOCK, 1);
+        mailbox.offer(1);
+
+        Thread producer = new Thread(() -> {
+            try {
+                mailbox.offer(2);
+            } catch (InterruptedException ignored) {
+            }
+        });
+        producer.start();
+
+        // Producer cannot finish until there is room
+        producer.join(100);
+        assertTrue(producer.isAlive());
+
+        assertEquals(Integer.valueOf(1), mailbox.take());
+        producer.join(1000);
+        assertFalse(producer.isAlive());
+        assertEquals(Integer.valueOf(2), mailbox.take());
+        assertEquals(0, mailbox.getDroppedCount());
+    }
+
+    @Test
+    public void close_releasesWaitingConsumer() throws Exception {
+        FrameMailbox<Integer> mailbox = new FrameMailbox<>(FrameMailbox.Policy.DROP_OLDEST, 1);
+        Integer[] result = {0};
+
+        Thread consumer = new Thread(() -> {
+            try {
+                result[0] = mailbox.take();
+            } catch (InterruptedException ignored) {
+            }
+        });
+        consumer.start();
+        mailbox.close();
+        consumer.join(1000);
+
+        assertFalse(consumer.isAlive());
+        assertNull(result[0]);
+    }
+
+    @Test
+    public void processor_countsProcessedFrames() throws Exception {
+        FramePool pool = new FramePool(2);
+        FrameProcessor processor = new FrameProcessor(
+                FrameMailbox.Policy.BLOCK, 1, pool, frame -> { });
+        processor.start();
+
+        for (int i = 0; i < 10; i++) {
+            Frame frame = processor.obtainFrame(16);
+            processor.submit(frame);
+        }
+        processor.stop();
+
+        // BLOCK never drops, and stop() drains what is already queued
+        assertEquals(10, processor.getProcessedCount());
+        assertEquals(0, processor.getDroppedCount());
+    }
+}
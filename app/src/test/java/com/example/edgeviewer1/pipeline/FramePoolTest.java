@@ -0,0 +1,60 @@
+package com.example.edgeviewer1.pipeline;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.*;
+
+public class FramePoolTest {
+
+    private static final int FRAME_BYTES = 64 * 48 * 4;
+
+    @Test
+    public void steadyState_allocatesNothing() {
+        FramePool pool = new FramePool(2);
+
+        // Warm-up: one input and one output buffer in flight
+        ByteBuffer in = pool.acquire(FRAME_BYTES);
+        ByteBuffer out = pool.acquire(FRAME_BYTES);
+        pool.release(in);
+        pool.release(out);
+        long warm = pool.getAllocationCount();
+        assertEquals(2, warm);
+
+        for (int i = 0; i < 1000; i++) {
+            in = pool.acquire(FRAME_BYTES);
+            out = pool.acquire(FRAME_BYTES);
+            assertTrue(in.isDirect());
+            assertNotSame(in, out);
+            pool.release(in);
+            pool.release(out);
+        }
+
+        assertEquals(warm, pool.getAllocationCount());
+    }
+
+    @Test
+    public void resolutionChange_reallocates() {
+        FramePool pool = new FramePool(2);
+
+        pool.release(pool.acquire(FRAME_BYTES));
+        ByteBuffer bigger = pool.acquire(FRAME_BYTES * 4);
+
+        assertEquals(FRAME_BYTES * 4, bigger.capacity());
+        assertEquals(2, pool.getAllocationCount());
+    }
+
+    @Test
+    public void staleBuffer_isNotReturnedToPool() {
+        FramePool pool = new FramePool(2);
+
+        ByteBuffer old = pool.acquire(FRAME_BYTES);
+        pool.acquire(FRAME_BYTES * 2);
+        pool.release(old);
+        pool.acquire(FRAME_BYTES * 2);
+
+        // The stale buffer was dropped, so the second acquire had to allocate
+        assertEquals(3, pool.getAllocationCount());
+    }
+}
@@ -0,0 +1,54 @@
+package com.example.edgeviewer1.pipeline;
+
+import org.junit.Test;
+
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class FrameProcessorTest {
+
+    private static void submit(FrameProcessor processor, long frameId) {
+        Frame frame = processor.obtainFrame(16);
+        frame.frameId = frameId;
+        processor.submit(frame);
+    }
+
+    @Test
+    public void restartAfterStop_processesFramesAgain() throws InterruptedException {
+        LinkedBlockingQueue<Long> processed = new LinkedBlockingQueue<>();
+        FrameProcessor processor = new FrameProcessor(
+                FrameMailbox.Policy.BLOCK, 1, new FramePool(2), frame -> processed.add(frame.frameId));
+
+        processor.start();
+        submit(processor, 1);
+        assertEquals(Long.valueOf(1), processed.poll(5, TimeUnit.SECONDS));
+
+        // What MainActivity does on onPause / onResume
+        processor.stop();
+        processor.start();
+
+        submit(processor, 2);
+        assertEquals(Long.valueOf(2), processed.poll(5, TimeUnit.SECONDS));
+        processor.stop();
+
+        assertEquals(2, processor.getProcessedCount());
+        assertEquals(0, processor.getDroppedCount());
+    }
+
+    @Test
+    public void framesSubmittedWhileStopped_areRecycled() {
+        FramePool pool = new FramePool(1);
+        FrameProcessor processor = new FrameProcessor(
+                FrameMailbox.Policy.DROP_OLDEST, 1, pool, frame -> fail("not started"));
+
+        processor.start();
+        processor.stop();
+        submit(processor, 1);
+        submit(processor, 2);
+
+        // The rejected buffer went back to the pool and was reused
+        assertEquals(1, pool.getAllocationCount());
+    }
+}
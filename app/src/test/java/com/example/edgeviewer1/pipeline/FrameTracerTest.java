@@ -0,0 +1,69 @@
+package com.example.edgeviewer1.pipeline;
+
+import org.junit.Test;
+
+import java.io.StringWriter;
+
+import static org.junit.Assert.*;
+
+public class FrameTracerTest {
+
+    private static void traceFrame(FrameTracer tracer, long id, long nativeNs) {
+        long t = id * 1_000_000L;
+        tracer.begin(id, t, t + 1_000);
+        tracer.mark(id, FrameTracer.STAGE_NATIVE_ENTER, t + 2_000);
+        tracer.mark(id, FrameTracer.STAGE_NATIVE_EXIT, t + 2_000 + nativeNs);
+        tracer.mark(id, FrameTracer.STAGE_UPLOAD, t + 3_000 + nativeNs);
+        tracer.mark(id, FrameTracer.STAGE_SWAP, t + 4_000 + nativeNs);
+    }
+
+    @Test
+    public void percentiles_perStage() {
+        FrameTracer tracer = new FrameTracer(100);
+        for (int i = 0; i < 100; i++) {
+            traceFrame(tracer, i, (i + 1) * 10_000L);
+        }
+
+        assertEquals(500_000, tracer.stagePercentileNs(FrameTracer.STAGE_NATIVE_EXIT, 50));
+        assertEquals(990_000, tracer.stagePercentileNs(FrameTracer.STAGE_NATIVE_EXIT, 99));
+        assertEquals(1_000, tracer.stagePercentileNs(FrameTracer.STAGE_ACQUIRE, 95));
+        assertEquals(4_000 + 1_000_000, tracer.glassToGlassPercentileNs(100));
+    }
+
+    @Test
+    public void ring_keepsOnlyRecentFrames() {
+        FrameTracer tracer = new FrameTracer(10);
+        for (int i = 0; i < 10; i++) {
+            traceFrame(tracer, i, 1_000_000);
+        }
+        for (int i = 10; i < 20; i++) {
+            traceFrame(tracer, i, 10_000);
+        }
+
+        // The slow first ten frames have been overwritten
+        assertEquals(10_000, tracer.stagePercentileNs(FrameTracer.STAGE_NATIVE_EXIT, 100));
+    }
+
+    @Test
+    public void mark_forRecycledFrame_isIgnored() {
+        FrameTracer tracer = new FrameTracer(4);
+        tracer.begin(5, 100, 200);
+        tracer.mark(1, FrameTracer.STAGE_NATIVE_ENTER, 999_999);
+
+        assertEquals(-1, tracer.stagePercentileNs(FrameTracer.STAGE_NATIVE_ENTER, 50));
+    }
+
+    @Test
+    public void chromeTrace_containsCompleteEvents() throws Exception {
+        FrameTracer tracer = new FrameTracer(4);
+        traceFrame(tracer, 1, 2_500);
+
+        StringWriter out = new StringWriter();
+        tracer.writeChromeTrace(out);
+        String json = out.toString();
+
+        assertTrue(json.startsWith("{\"traceEvents\":["));
+        assertTrue(json.contains("\"name\":\"native\",\"ph\":\"X\""));
+        assertTrue(json.contains("\"dur\":2.500"));
+    }
+}
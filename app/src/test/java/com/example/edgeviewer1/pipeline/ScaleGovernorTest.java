@@ -0,0 +1,88 @@
+package com.example.edgeviewer1.pipeline;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class ScaleGovernorTest {
+
+    private static final long BUDGET_NS = 33_000_000;
+    private static final float[] SCALES = {1f, 0.75f, 0.5f};
+
+    // Simulated device: processing time proportional to the processed pixels
+    private static long costAt(float scale, long fullScaleNs) {
+        return (long) (fullScaleNs * scale * scale);
+    }
+
+    @Test
+    public void withinBudget_staysAtFullScale() {
+        ScaleGovernor governor = new ScaleGovernor(SCALES, BUDGET_NS);
+
+        for (int i = 0; i < 500; i++) {
+            governor.onFrameProcessed(20_000_000);
+        }
+
+        assertEquals(1f, governor.getScale(), 0f);
+        assertEquals(0, governor.getChangeCount());
+    }
+
+    @Test
+    public void slowDevice_stepsDownUntilWithinBudget() {
+        ScaleGovernor governor = new ScaleGovernor(SCALES, BUDGET_NS);
+        long fullScaleNs = 120_000_000;   // ~8 fps at full scale
+
+        for (int i = 0; i < 500; i++) {
+            governor.onFrameProcessed(costAt(governor.getScale(), fullScaleNs));
+        }
+
+        // 0.5 -> 30 ms fits, 0.75 -> 67 ms does not
+        assertEquals(0.5f, governor.getScale(), 0f);
+        assertEquals(2, governor.getChangeCount());
+    }
+
+    @Test
+    public void singleSlowFrame_doesNotChangeScale() {
+        ScaleGovernor governor = new ScaleGovernor(SCALES, BUDGET_NS);
+
+        for (int i = 0; i < 100; i++) {
+            governor.onFrameProcessed(i == 50 ? 200_000_000 : 20_000_000);
+        }
+
+        assertEquals(0, governor.getLevel());
+    }
+
+    @Test
+    public void costNearBoundary_doesNotOscillate() {
+        ScaleGovernor governor = new ScaleGovernor(SCALES, BUDGET_NS);
+        // Full scale just over budget, 0.75 comfortably under it but not
+        // with enough headroom to predict a fit at full scale again
+        long fullScaleNs = 36_000_000;
+
+        for (int i = 0; i < 2000; i++) {
+            governor.onFrameProcessed(costAt(governor.getScale(), fullScaleNs));
+        }
+
+        assertEquals(0.75f, governor.getScale(), 0f);
+        assertEquals(1, governor.getChangeCount());
+    }
+
+    @Test
+    public void loadDrops_stepsBackUp() {
+        ScaleGovernor governor = new ScaleGovernor(SCALES, BUDGET_NS);
+
+        for (int i = 0; i < 300; i++) {
+            governor.onFrameProcessed(costAt(governor.getScale(), 120_000_000));
+        }
+        assertEquals(2, governor.getLevel());
+
+        for (int i = 0; i < 1000; i++) {
+            governor.onFrameProcessed(costAt(governor.getScale(), 10_000_000));
+        }
+        assertEquals(0, governor.getLevel());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void ascendingScales_areRejected() {
+        new ScaleGovernor(new float[]{0.5f, 1f}, BUDGET_NS);
+    }
+}
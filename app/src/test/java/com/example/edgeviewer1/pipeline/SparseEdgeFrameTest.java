@@ -0,0 +1,184 @@
+package com.example.edgeviewer1.pipeline;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.*;
+
+public class SparseEdgeFrameTest {
+
+    // 4x2 frame with edges at pixels 1, 2 and 7
+    private static final int[] EDGES = {0, 255, 255, 0, 0, 0, 0, 255};
+
+    private static ByteBuffer frame(int encoding, int width, int height, int... payload) {
+        ByteBuffer buffer = ByteBuffer.allocate(SparseEdgeFrame.HEADER_SIZE + payload.length);
+        buffer.put((byte) 'E').put((byte) encoding)
+                .put((byte) width).put((byte) (width >> 8))
+                .put((byte) height).put((byte) (height >> 8))
+                .put((byte) 0).put((byte) 0);
+        for (int b : payload) {
+            buffer.put((byte) b);
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    private static void assertPixels(int[] expected, ByteBuffer luminance) {
+        for (int i = 0; i < expected.length; i++) {
+            assertEquals("pixel " + i, expected[i], luminance.get(i) & 0xFF);
+        }
+    }
+
+    @Test
+    public void header_isReadWithoutMovingTheBuffer() {
+        ByteBuffer encoded = frame(SparseEdgeFrame.ENCODING_RLE, 1280, 720, 0);
+
+        assertEquals(SparseEdgeFrame.ENCODING_RLE, SparseEdgeFrame.encoding(encoded));
+        assertEquals(1280, SparseEdgeFrame.width(encoded));
+        assertEquals(720, SparseEdgeFrame.height(encoded));
+        assertEquals(0, encoded.position());
+        assertEquals(8 + 115200, SparseEdgeFrame.maxEncodedSize(1280, 720));
+    }
+
+    @Test
+    public void maxEncodedSize_doesNotOverflowForLargestHeader() {
+        // 65535 x 65535 pixels overflow an int, their bitmask does not
+        assertEquals(8 + 536854529, SparseEdgeFrame.maxEncodedSize(0xFFFF, 0xFFFF));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void maxMessageSize_rejectsSizesPastIntRange() {
+        SparseEdgeFrame.maxMessageSize(0xFFFF, 0xFFFF);
+    }
+
+    @Test
+    public void bitmask_isLeastSignificantBitFirst() {
+        ByteBuffer luminance = ByteBuffer.allocateDirect(8);
+
+        SparseEdgeFrame.decode(frame(SparseEdgeFrame.ENCODING_BITMASK, 4, 2, 0b10000110), luminance);
+
+        assertPixels(EDGES, luminance);
+    }
+
+    @Test
+    public void runs_startWithNonEdges() {
+        ByteBuffer luminance = ByteBuffer.allocateDirect(8);
+        luminance.put(5, (byte) 255);   // stale content is cleared
+
+        SparseEdgeFrame.decode(frame(SparseEdgeFrame.ENCODING_RLE, 4, 2, 1, 2, 4, 1), luminance);
+
+        assertPixels(EDGES, luminance);
+    }
+
+    @Test
+    public void longRuns_useMultiByteLengths() {
+        ByteBuffer luminance = ByteBuffer.allocateDirect(200);
+
+        // 150 non-edges (0x96 0x01), then 50 edges
+        SparseEdgeFrame.decode(frame(SparseEdgeFrame.ENCODING_RLE, 200, 1, 0x96, 0x01, 50), luminance);
+
+        assertEquals(0, luminance.get(149));
+        assertEquals((byte) 255, luminance.get(150));
+        assertEquals((byte) 255, luminance.get(199));
+    }
+
+    @Test
+    public void delta_togglesChangedPixelsOfPreviousFrame() {
+        ByteBuffer luminance = ByteBuffer.allocateDirect(8);
+        SparseEdgeFrame.decode(frame(SparseEdgeFrame.ENCODING_RLE, 4, 2, 1, 2, 4, 1), luminance);
+
+        // Pixel 2 disappears, pixel 3 appears
+        SparseEdgeFrame.decode(frame(SparseEdgeFrame.ENCODING_DELTA, 4, 2, 2, 2, 4), luminance);
+
+        assertPixels(new int[]{0, 255, 0, 255, 0, 0, 0, 255}, luminance);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void runsShortOfFrame_areRejected() {
+        SparseEdgeFrame.decode(frame(SparseEdgeFrame.ENCODING_RLE, 4, 2, 1, 2), ByteBuffer.allocateDirect(8));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void smallLuminanceBuffer_isRejected() {
+        SparseEdgeFrame.decode(frame(SparseEdgeFrame.ENCODING_BITMASK, 4, 2, 0), ByteBuffer.allocateDirect(4));
+    }
+
+    @Test
+    public void unknownEncoding_hasNoHeader() {
+        assertEquals(-1, SparseEdgeFrame.encoding(frame(7, 4, 2, 0)));
+    }
+
+    private static ByteBuffer roundTrip(byte[] pixels, int width, int height, int expectedEncoding) {
+        byte[] out = new byte[SparseEdgeFrame.maxMessageSize(width, height)];
+        int length = SparseEdgeFrame.encode(pixels, width, height, 0x12345, out);
+        ByteBuffer encoded = ByteBuffer.wrap(out, 0, length);
+
+        assertEquals(expectedEncoding, SparseEdgeFrame.encoding(encoded));
+        assertEquals(width, SparseEdgeFrame.width(encoded));
+        assertEquals(height, SparseEdgeFrame.height(encoded));
+        assertEquals(0x2345, SparseEdgeFrame.sequence(encoded));
+
+        ByteBuffer decoded = ByteBuffer.allocate(width * height);
+        SparseEdgeFrame.decode(encoded, decoded);
+        assertArrayEquals(pixels, decoded.array());
+        return encoded;
+    }
+
+    @Test
+    public void sparseEdges_areRunLengthCoded() {
+        int width = 640;
+        int height = 480;
+        byte[] pixels = new byte[width * height];
+        for (int y = 0; y < height; y++) {
+            pixels[y * width + 200] = (byte) 255;   // one vertical line
+        }
+
+        ByteBuffer encoded = roundTrip(pixels, width, height, SparseEdgeFrame.ENCODING_RLE);
+
+        // Two short runs per row instead of 640 bytes
+        assertTrue(encoded.remaining() < width * height / 100);
+    }
+
+    @Test
+    public void edgeInFirstPixel_startsWithEmptyRun() {
+        byte[] pixels = new byte[128];
+        pixels[0] = (byte) 255;
+        pixels[6] = (byte) 255;
+        pixels[7] = (byte) 255;
+        ByteBuffer encoded = roundTrip(pixels, 64, 2, SparseEdgeFrame.ENCODING_RLE);
+
+        assertEquals(0, encoded.get(SparseEdgeFrame.HEADER_SIZE));
+    }
+
+    @Test
+    public void noisyBinaryFrame_isBitPacked() {
+        byte[] pixels = new byte[64];
+        for (int i = 0; i < pixels.length; i += 2) {
+            pixels[i] = (byte) 255;
+        }
+        ByteBuffer encoded = roundTrip(pixels, 8, 8, SparseEdgeFrame.ENCODING_BITMASK);
+
+        assertEquals(SparseEdgeFrame.maxEncodedSize(8, 8), encoded.remaining());
+    }
+
+    @Test
+    public void grayFrame_isStoredRaw() {
+        byte[] pixels = new byte[64];
+        for (int i = 0; i < pixels.length; i++) {
+            pixels[i] = (byte) (i * 3);
+        }
+        roundTrip(pixels, 8, 8, SparseEdgeFrame.ENCODING_GRAY);
+    }
+
+    @Test
+    public void grayPixelPastLongRuns_isStillStoredRaw() {
+        // Binary up to where the runs outgrow a bitmask
+        byte[] pixels = new byte[64];
+        for (int i = 0; i < 40; i += 2) {
+            pixels[i] = (byte) 255;
+        }
+        pixels[63] = 17;
+        roundTrip(pixels, 8, 8, SparseEdgeFrame.ENCODING_GRAY);
+    }
+}
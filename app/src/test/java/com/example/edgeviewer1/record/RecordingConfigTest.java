@@ -0,0 +1,44 @@
+package com.example.edgeviewer1.record;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class RecordingConfigTest {
+
+    @Test
+    public void defaults_are720p30() {
+        RecordingConfig config = new RecordingConfig.Builder().build();
+
+        assertEquals(1280, config.width);
+        assertEquals(720, config.height);
+        assertEquals(30, config.frameRate);
+        assertEquals(1, config.keyFrameIntervalSeconds);
+    }
+
+    @Test
+    public void builder_keepsSettings() {
+        RecordingConfig config = new RecordingConfig.Builder()
+                .size(720, 1280)
+                .bitRate(2_000_000)
+                .frameRate(60)
+                .keyFrameInterval(0)
+                .build();
+
+        assertEquals(720, config.width);
+        assertEquals(1280, config.height);
+        assertEquals(2_000_000, config.bitRate);
+        assertEquals(60, config.frameRate);
+        assertEquals(0, config.keyFrameIntervalSeconds);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void oddSize_isRejected() {
+        new RecordingConfig.Builder().size(1279, 720).build();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void zeroBitRate_isRejected() {
+        new RecordingConfig.Builder().bitRate(0).build();
+    }
+}
@@ -0,0 +1,173 @@
+package com.example.edgeviewer1.stream;
+
+import com.example.edgeviewer1.pipeline.SparseEdgeFrame;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.*;
+
+// End to end over localhost: handshake, frame delivery, slow-client drops
+public class EdgeStreamServerTest {
+
+    private static final int WIDTH = 64;
+    private static final int HEIGHT = 48;
+
+    private EdgeStreamServer server;
+
+    @Before
+    public void setUp() throws IOException {
+        server = new EdgeStreamServer(0);
+        server.start();
+    }
+
+    @After
+    public void tearDown() {
+        server.stop();
+    }
+
+    private Socket connect() throws Exception {
+        Socket socket = new Socket("127.0.0.1", server.getPort());
+        socket.setSoTimeout(5000);
+        OutputStream out = socket.getOutputStream();
+        out.write(("GET / HTTP/1.1\r\n"
+                + "Host: localhost\r\n"
+                + "Upgrade: websocket\r\n"
+                + "Connection: Upgrade\r\n"
+                + "Sec-WebSocket-Key: dGhlIHNhbXBsZSBub25jZQ==\r\n"
+                + "Sec-WebSocket-Version: 13\r\n"
+                + "\r\n").getBytes(StandardCharsets.US_ASCII));
+        out.flush();
+
+        DataInputStream in = new DataInputStream(socket.getInputStream());
+        StringBuilder response = new StringBuilder();
+        while (!response.toString().endsWith("\r\n\r\n")) {
+            response.append((char) in.readUnsignedByte());
+        }
+        assertTrue(response.toString(), response.toString().startsWith("HTTP/1.1 101"));
+        // Example key and answer from RFC 6455
+        assertTrue(response.toString().contains("Sec-WebSocket-Accept: s3pPLMBiTxaQ9kYGzzhZRbK+xOo="));
+
+        // The client registers right after the handshake, on its own thread
+        long deadline = System.currentTimeMillis() + 5000;
+        int expected = server.getClientCount() + 1;
+        while (server.getClientCount() < expected && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        return socket;
+    }
+
+    private static byte[] readMessage(Socket socket) throws IOException {
+        DataInputStream in = new DataInputStream(socket.getInputStream());
+        assertEquals(0x82, in.readUnsignedByte());
+        int length = in.readUnsignedByte();
+        if (length == 126) {
+            length = in.readUnsignedShort();
+        } else if (length == 127) {
+            length = (int) in.readLong();
+        }
+        byte[] message = new byte[length];
+        in.readFully(message);
+        return message;
+    }
+
+    private static ByteBuffer edgeFrame(int column) {
+        ByteBuffer frame = ByteBuffer.allocateDirect(WIDTH * HEIGHT);
+        for (int y = 0; y < HEIGHT; y++) {
+            frame.put(y * WIDTH + column, (byte) 255);
+        }
+        return frame;
+    }
+
+    private static void waitForEncoded(EdgeStreamServer server, long count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (server.getEncodedFrameCount() < count && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+    }
+
+    @Test
+    public void acceptKey_matchesRfcExample() {
+        assertEquals("s3pPLMBiTxaQ9kYGzzhZRbK+xOo=", EdgeStreamServer.acceptKey("dGhlIHNhbXBsZSBub25jZQ=="));
+    }
+
+    @Test
+    public void everyClientReceivesTheSameEncodedFrame() throws Exception {
+        try (Socket first = connect(); Socket second = connect()) {
+            assertEquals(2, server.getClientCount());
+
+            server.publish(edgeFrame(10), WIDTH, HEIGHT, 7);
+
+            byte[] a = readMessage(first);
+            byte[] b = readMessage(second);
+            assertArrayEquals(a, b);
+            assertEquals(1, server.getEncodedFrameCount());
+
+            ByteBuffer message = ByteBuffer.wrap(a);
+            assertEquals(SparseEdgeFrame.ENCODING_RLE, SparseEdgeFrame.encoding(message));
+            assertEquals(7, SparseEdgeFrame.sequence(message));
+            ByteBuffer pixels = ByteBuffer.allocate(WIDTH * HEIGHT);
+            SparseEdgeFrame.decode(message, pixels);
+            assertEquals((byte) 255, pixels.get(5 * WIDTH + 10));
+            assertEquals(0, pixels.get(5 * WIDTH + 11));
+        }
+    }
+
+    @Test
+    public void slowClient_skipsToNewestFrame() throws Exception {
+        try (Socket socket = connect()) {
+            // Nobody reads, so frames pile up in the socket buffers until the
+            // sender blocks; from then on each publish replaces the last
+            int published = 0;
+            while (server.getDroppedFrameCount() == 0 && published < 100_000) {
+                ByteBuffer noise = ByteBuffer.allocateDirect(WIDTH * HEIGHT);
+                for (int i = 0; i < WIDTH * HEIGHT; i++) {
+                    noise.put(i, (byte) (i * 31 + published));
+                }
+                server.publish(noise, WIDTH, HEIGHT, published++);
+                waitForEncoded(server, published - server.getDroppedFrameCount());
+            }
+            assertTrue(server.getDroppedFrameCount() > 0);
+            assertTrue(published < 100_000);
+        }
+    }
+
+    @Test
+    public void disconnectedClient_isRemoved() throws Exception {
+        Socket socket = connect();
+        assertEquals(1, server.getClientCount());
+        socket.close();
+
+        long deadline = System.currentTimeMillis() + 5000;
+        while (server.getClientCount() > 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        assertEquals(0, server.getClientCount());
+    }
+
+    @Test
+    public void plainHttpRequest_isRejected() throws Exception {
+        try (Socket socket = new Socket("127.0.0.1", server.getPort())) {
+            socket.setSoTimeout(5000);
+            socket.getOutputStream().write("GET / HTTP/1.1\r\nHost: x\r\n\r\n".getBytes(StandardCharsets.US_ASCII));
+            byte[] status = new byte[12];
+            new DataInputStream(socket.getInputStream()).readFully(status);
+            assertEquals("HTTP/1.1 400", new String(status, StandardCharsets.US_ASCII));
+        }
+        assertEquals(0, server.getClientCount());
+    }
+
+    @Test
+    public void defaultServer_listensOnLoopbackOnly() {
+        assertFalse(server.isLanAccess());
+        assertEquals("ws://127.0.0.1:" + server.getPort(), server.getUrl());
+    }
+}
@@ -0,0 +1,285 @@
+package com.example.edgeviewer1.batch;
+
+import com.example.edgeviewer1.jni.NativeBridge;
+
+import org.opencv.core.Core;
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfInt;
+import org.opencv.core.Size;
+import org.opencv.videoio.VideoCapture;
+import org.opencv.videoio.VideoWriter;
+import org.opencv.videoio.Videoio;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs the app's edge pipeline over a whole video file.
+ *
+ * One thread decodes with VideoCapture, a pool of workers runs
+ * NativeBridge.processMatToEdges() (the same Canny the app uses on camera
+ * frames) and the calling thread writes the edge maps back in frame order
+ * with VideoWriter. Native threading is pinned to one thread per call, so the
+ * speedup comes from processing whole frames in parallel, and the report's
+ * fps per worker shows how well that scales.
+ *
+ * Usage: BatchEdgeRunner input output [--workers N] [--memory] [--fourcc XVID]
+ *
+ * --memory reads the input into memory first and decodes it through an
+ * IStreamReader, which takes disk reads out of the timing.
+ */
+public final class BatchEdgeRunner {
+
+    private static final int DEFAULT_FPS = 30;
+
+    // Frames in flight per worker: one being processed, one queued and one
+    // waiting to be written
+    private static final int FRAMES_PER_WORKER = 3;
+
+    private static final class Frame {
+        final Mat input = new Mat();
+        final Mat edges = new Mat();
+        long index;
+
+        void release() {
+            input.release();
+            edges.release();
+        }
+    }
+
+    private final String inputPath;
+    private final String outputPath;
+    private final int workerCount;
+    private final boolean fromMemory;
+    private final int fourcc;
+
+    // Queued to each worker after the last frame
+    private final Frame end = new Frame();
+
+    private final BlockingQueue<Frame> freeFrames;
+    private final BlockingQueue<Frame> work;
+    private final FrameReorderBuffer<Frame> done;
+    private final long[] busyNanos;
+    private final AtomicInteger runningWorkers;
+
+    private volatile double inputFps = DEFAULT_FPS;
+    private volatile long decodeNanos;
+    private volatile Throwable failure;
+
+    BatchEdgeRunner(String inputPath, String outputPath, int workerCount, boolean fromMemory, int fourcc) {
+        this.inputPath = inputPath;
+        this.outputPath = outputPath;
+        this.workerCount = workerCount;
+        this.fromMemory = fromMemory;
+        this.fourcc = fourcc;
+
+        int poolSize = workerCount * FRAMES_PER_WORKER;
+        freeFrames = new ArrayBlockingQueue<>(poolSize);
+        for (int i = 0; i < poolSize; i++) {
+            freeFrames.add(new Frame());
+        }
+        work = new ArrayBlockingQueue<>(poolSize + workerCount);
+        done = new FrameReorderBuffer<>(poolSize);
+        busyNanos = new long[workerCount];
+        runningWorkers = new AtomicInteger(workerCount);
+    }
+
+    public static void main(String[] args) throws Exception {
+        String input = null;
+        String output = null;
+        int workers = Runtime.getRuntime().availableProcessors();
+        boolean memory = false;
+        String fourcc = "MJPG";
+
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--workers":
+                    workers = Integer.parseInt(args[++i]);
+                    break;
+                case "--memory":
+                    memory = true;
+                    break;
+                case "--fourcc":
+                    fourcc = args[++i];
+                    break;
+                default:
+                    if (input == null) {
+                        input = args[i];
+                    } else if (output == null) {
+                        output = args[i];
+                    } else {
+                        usage();
+                    }
+            }
+        }
+        if (input == null || output == null || workers <= 0 || fourcc.length() != 4) {
+            usage();
+        }
+
+        System.loadLibrary(Core.NATIVE_LIBRARY_NAME);
+        NativeBridge.setNumThreads(1);
+
+        int code = VideoWriter.fourcc(fourcc.charAt(0), fourcc.charAt(1), fourcc.charAt(2), fourcc.charAt(3));
+        new BatchEdgeRunner(input, output, workers, memory, code).run();
+    }
+
+    private static void usage() {
+        System.err.println("Usage: BatchEdgeRunner input output [--workers N] [--memory] [--fourcc XVID]");
+        System.exit(2);
+    }
+
+    void run() throws Exception {
+        Thread decoder = new Thread(this::decode, "batch-decode");
+        Thread[] workers = new Thread[workerCount];
+        for (int i = 0; i < workerCount; i++) {
+            int worker = i;
+            workers[i] = new Thread(() -> process(worker), "batch-worker-" + i);
+        }
+
+        long start = System.nanoTime();
+        decoder.start();
+        for (Thread worker : workers) {
+            worker.start();
+        }
+
+        long frames = 0;
+        VideoWriter writer = null;
+        try {
+            Frame frame;
+            while ((frame = done.take()) != null) {
+                if (writer == null) {
+                    writer = new VideoWriter(outputPath, fourcc, inputFps,
+                            new Size(frame.edges.cols(), frame.edges.rows()), false);
+                    if (!writer.isOpened()) {
+                        throw new IOException("Cannot open " + outputPath + " for writing");
+                    }
+                }
+                writer.write(frame.edges);
+                frames++;
+                freeFrames.put(frame);
+            }
+        } finally {
+            if (writer != null) {
+                writer.release();
+            }
+            // Unblocks the decoder and workers if writing failed
+            decoder.interrupt();
+            for (Thread worker : workers) {
+                worker.interrupt();
+            }
+            decoder.join();
+            for (Thread worker : workers) {
+                worker.join();
+            }
+            for (Frame frame : freeFrames) {
+                frame.release();
+            }
+        }
+        long elapsed = System.nanoTime() - start;
+
+        if (failure != null) {
+            throw new IllegalStateException("Batch failed after " + frames + " frames", failure);
+        }
+        report(frames, elapsed);
+    }
+
+    private void decode() {
+        VideoCapture capture = null;
+        try {
+            // The stream reader's callbacks must run on the thread that
+            // created it, so the capture is opened here rather than in run()
+            if (fromMemory) {
+                byte[] data = Files.readAllBytes(Paths.get(inputPath));
+                capture = new VideoCapture(new MemoryStreamReader(data), Videoio.CAP_ANY, new MatOfInt());
+            } else {
+                capture = new VideoCapture(inputPath);
+            }
+            if (!capture.isOpened()) {
+                throw new IOException("Cannot open " + inputPath);
+            }
+            double fps = capture.get(Videoio.CAP_PROP_FPS);
+            if (fps > 0) {
+                inputFps = fps;
+            }
+
+            long index = 0;
+            long decodeTime = 0;
+            while (failure == null) {
+                Frame frame = freeFrames.take();
+                long start = System.nanoTime();
+                boolean read = capture.read(frame.input);
+                decodeTime += System.nanoTime() - start;
+                if (!read) {
+                    freeFrames.put(frame);
+                    break;
+                }
+                frame.index = index++;
+                work.put(frame);
+            }
+            decodeNanos = decodeTime;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Throwable t) {
+            fail(t);
+        } finally {
+            if (capture != null) {
+                capture.release();
+            }
+            for (int i = 0; i < workerCount; i++) {
+                // work has room for one end marker per worker on top of every frame
+                work.offer(end);
+            }
+        }
+    }
+
+    private void process(int worker) {
+        try {
+            Frame frame;
+            while ((frame = work.take()) != end) {
+                long start = System.nanoTime();
+                int status = NativeBridge.processMatToEdges(
+                        frame.input.getNativeObjAddr(), frame.edges.getNativeObjAddr());
+                busyNanos[worker] += System.nanoTime() - start;
+                if (status != NativeBridge.STATUS_OK) {
+                    throw new IllegalStateException("processMatToEdges failed with status " + status
+                            + " on frame " + frame.index);
+                }
+                done.put(frame.index, frame);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Throwable t) {
+            fail(t);
+        } finally {
+            if (runningWorkers.decrementAndGet() == 0) {
+                done.close();
+            }
+        }
+    }
+
+    private void fail(Throwable t) {
+        if (failure == null) {
+            failure = t;
+        }
+        done.close();
+    }
+
+    private void report(long frames, long elapsedNanos) {
+        double seconds = elapsedNanos / 1e9;
+        double fps = frames / seconds;
+        System.out.printf(Locale.US, "%d frames in %.2f s: %.1f fps with %d workers on %d cores%n",
+                frames, seconds, fps, workerCount, Runtime.getRuntime().availableProcessors());
+        System.out.printf(Locale.US, "  %.1f fps per worker%n", fps / workerCount);
+        System.out.printf(Locale.US, "  decode: %.2f ms/frame%n",
+                frames > 0 ? decodeNanos / 1e6 / frames : 0.0);
+        for (int i = 0; i < workerCount; i++) {
+            System.out.printf(Locale.US, "  worker %d: %.0f%% busy%n",
+                    i, 100.0 * busyNanos[i] / elapsedNanos);
+        }
+    }
+}
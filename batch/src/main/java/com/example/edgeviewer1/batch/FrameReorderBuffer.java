@@ -0,0 +1,68 @@
+package com.example.edgeviewer1.batch;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Hands out results in frame order while workers finish them in any order.
+ *
+ * put() may be called from any thread; take() from the single writer thread.
+ * At most `capacity` results are held: a worker that gets that far ahead of
+ * the writer blocks in put() until the frame the writer is waiting for
+ * arrives. The frame the writer needs next is always accepted, but a worker
+ * blocked on a later frame cannot deliver it, so callers that cannot afford to
+ * block size the buffer to the number of frames they keep in flight.
+ */
+final class FrameReorderBuffer<T> {
+
+    private final int capacity;
+    private final Map<Long, T> pending = new HashMap<>();
+    private long next;
+    private boolean closed;
+
+    FrameReorderBuffer(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be positive");
+        }
+        this.capacity = capacity;
+    }
+
+    synchronized void put(long index, T result) throws InterruptedException {
+        if (index < next || pending.containsKey(index)) {
+            throw new IllegalArgumentException("Frame " + index + " was already put");
+        }
+        while (index != next && pending.size() >= capacity && !closed) {
+            wait();
+        }
+        pending.put(index, result);
+        notifyAll();
+    }
+
+    /**
+     * Returns the next frame in order, waiting for it if needed, or null once
+     * close() was called and every frame before the end has been taken.
+     */
+    synchronized T take() throws InterruptedException {
+        while (!pending.containsKey(next)) {
+            if (closed) {
+                return null;
+            }
+            wait();
+        }
+        T result = pending.remove(next);
+        next++;
+        notifyAll();
+        return result;
+    }
+
+    // No more frames will be put; take() drains what is contiguous and then
+    // returns null
+    synchronized void close() {
+        closed = true;
+        notifyAll();
+    }
+
+    synchronized int size() {
+        return pending.size();
+    }
+}
@@ -0,0 +1,59 @@
+package com.example.edgeviewer1.batch;
+
+import org.opencv.videoio.IStreamReader;
+
+/**
+ * Feeds VideoCapture from a byte array, so a clip can be decoded without
+ * touching the file system between runs (e.g. to time the pipeline without
+ * disk reads). Used with VideoCapture(IStreamReader, apiPreference, params);
+ * the backend must support stream input (CAP_FFMPEG does).
+ */
+final class MemoryStreamReader extends IStreamReader {
+
+    // Origins passed to seek(), as in lseek
+    private static final int SEEK_SET = 0;
+    private static final int SEEK_CUR = 1;
+    private static final int SEEK_END = 2;
+
+    private final byte[] data;
+    private long position;
+
+    MemoryStreamReader(byte[] data) {
+        this.data = data;
+    }
+
+    @Override
+    public long read(byte[] buffer, long size) {
+        int count = (int) Math.min(Math.min(size, buffer.length), data.length - position);
+        if (count <= 0) {
+            return 0;
+        }
+        System.arraycopy(data, (int) position, buffer, 0, count);
+        position += count;
+        return count;
+    }
+
+    @Override
+    public long seek(long offset, int origin) {
+        long base;
+        switch (origin) {
+            case SEEK_SET:
+                base = 0;
+                break;
+            case SEEK_CUR:
+                base = position;
+                break;
+            case SEEK_END:
+                base = data.length;
+                break;
+            default:
+                return -1;
+        }
+        long target = base + offset;
+        if (target < 0 || target > data.length) {
+            return -1;
+        }
+        position = target;
+        return position;
+    }
+}
@@ -0,0 +1,110 @@
+package com.example.edgeviewer1.batch;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class FrameReorderBufferTest {
+
+    @Test
+    public void outOfOrderPuts_areTakenInOrder() throws Exception {
+        FrameReorderBuffer<String> buffer = new FrameReorderBuffer<>(4);
+        buffer.put(2, "c");
+        buffer.put(0, "a");
+        buffer.put(3, "d");
+        buffer.put(1, "b");
+        buffer.close();
+
+        assertEquals("a", buffer.take());
+        assertEquals("b", buffer.take());
+        assertEquals("c", buffer.take());
+        assertEquals("d", buffer.take());
+        assertNull(buffer.take());
+    }
+
+    @Test
+    public void close_stopsAtFirstGap() throws Exception {
+        FrameReorderBuffer<String> buffer = new FrameReorderBuffer<>(4);
+        buffer.put(0, "a");
+        buffer.put(2, "c");
+        buffer.close();
+
+        assertEquals("a", buffer.take());
+        assertNull(buffer.take());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void duplicateIndex_isRejected() throws Exception {
+        FrameReorderBuffer<String> buffer = new FrameReorderBuffer<>(4);
+        buffer.put(0, "a");
+        buffer.take();
+        buffer.put(0, "again");
+    }
+
+    @Test
+    public void fullBuffer_blocksLaterFramesButAcceptsNext() throws Exception {
+        FrameReorderBuffer<String> buffer = new FrameReorderBuffer<>(1);
+        buffer.put(1, "b");
+
+        Thread late = new Thread(() -> {
+            try {
+                buffer.put(2, "c");
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        late.start();
+        late.join(100);
+        assertTrue(late.isAlive());
+
+        buffer.put(0, "a");
+        assertEquals("a", buffer.take());
+        assertEquals("b", buffer.take());
+        assertEquals("c", buffer.take());
+        late.join();
+    }
+
+    @Test
+    public void concurrentWorkers_deliverEveryFrameInOrder() throws Exception {
+        int frames = 2000;
+        int workers = 4;
+        FrameReorderBuffer<Integer> buffer = new FrameReorderBuffer<>(frames);
+
+        // Each worker owns every workers-th frame and puts them in reverse
+        // pairs, so frames regularly arrive ahead of the one being waited for
+        Thread[] threads = new Thread[workers];
+        for (int w = 0; w < workers; w++) {
+            int first = w;
+            threads[w] = new Thread(() -> {
+                try {
+                    for (int i = first; i < frames; i += 2 * workers) {
+                        int second = i + workers;
+                        if (second < frames) {
+                            buffer.put(second, second);
+                        }
+                        buffer.put(i, i);
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+            threads[w].start();
+        }
+
+        List<Integer> taken = new ArrayList<>();
+        for (int i = 0; i < frames; i++) {
+            taken.add(buffer.take());
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        for (int i = 0; i < frames; i++) {
+            assertEquals(Integer.valueOf(i), taken.get(i));
+        }
+        assertEquals(0, buffer.size());
+    }
+}
@@ -0,0 +1,193 @@
+package com.example.edgeviewer1.benchmark;
+
+import com.example.edgeviewer1.jni.FilterGraph;
+import com.example.edgeviewer1.jni.NativeBridge;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-frame cost of the NativeBridge processing calls on synthetic frames.
+ *
+ * AverageTime gives ns/frame, Throughput gives frames/s, and the gc profiler
+ * configured in build.gradle adds allocated bytes per frame. The byte[]
+ * benchmarks are the original copying API and serve as the baseline.
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.AverageTime, Mode.Throughput})
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class NativeBridgeBenchmark {
+
+    @Param({"480p", "720p", "1080p", "4K"})
+    public String resolution;
+
+    @Param({"1"})
+    public int threads;
+
+    private int width;
+    private int height;
+
+    private byte[] rgbaArray;
+    private byte[] rgbaOutArray;
+    private ByteBuffer rgba;
+    private ByteBuffer luma;
+    private ByteBuffer rgbaOut;
+    private ByteBuffer monoOut;
+
+    // Same work as lumaEdgesMono, plus a blur and a dilation, in one call
+    private FilterGraph edgeGraph;
+
+    // Canny output of the synthetic frame and its sparse encoding
+    private ByteBuffer edgeMask;
+    private ByteBuffer encodedEdges;
+    private int encodedLength;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        switch (resolution) {
+            case "480p":
+                width = 640;
+                height = 480;
+                break;
+            case "720p":
+                width = 1280;
+                height = 720;
+                break;
+            case "1080p":
+                width = 1920;
+                height = 1080;
+                break;
+            case "4K":
+                width = 3840;
+                height = 2160;
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown resolution " + resolution);
+        }
+
+        NativeBridge.setNumThreads(threads);
+
+        int pixels = width * height;
+        rgbaArray = new byte[pixels * 4];
+        rgbaOutArray = new byte[pixels * 4];
+        rgba = ByteBuffer.allocateDirect(pixels * 4);
+        luma = ByteBuffer.allocateDirect(pixels);
+        rgbaOut = ByteBuffer.allocateDirect(pixels * 4);
+        monoOut = ByteBuffer.allocateDirect(pixels);
+
+        fillSyntheticFrame(rgbaArray, luma, width, height);
+        rgba.put(rgbaArray);
+        rgba.clear();
+
+        edgeGraph = new FilterGraph.Builder()
+                .gray()
+                .blur(5, 1.2f)
+                .canny(80, 150)
+                .morphology(FilterGraph.MORPH_DILATE, 3, 1)
+                .build();
+
+        edgeMask = ByteBuffer.allocateDirect(pixels);
+        FilterGraph canny = new FilterGraph.Builder().canny(80, 150).build();
+        canny.run(luma, FilterGraph.INPUT_LUMA, width, edgeMask, width, height);
+        canny.release();
+        // One byte per pixel is well above the bit-packed worst case
+        encodedEdges = ByteBuffer.allocateDirect(pixels);
+        encodedLength = NativeBridge.encodeEdgeFrame(edgeMask, null, width, height, encodedEdges);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        edgeGraph.release();
+    }
+
+    // Fixed seed: same frame on every run and every machine
+    private static void fillSyntheticFrame(byte[] rgba, ByteBuffer luma, int width, int height) {
+        Random random = new Random(42);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                // Blocky pattern gives Canny real edges; noise keeps it honest
+                int block = ((x / 32) + (y / 32)) % 2 == 0 ? 60 : 190;
+                int value = Math.min(255, Math.max(0, block + random.nextInt(31) - 15));
+
+                int i = (y * width + x) * 4;
+                rgba[i] = (byte) value;
+                rgba[i + 1] = (byte) value;
+                rgba[i + 2] = (byte) value;
+                rgba[i + 3] = (byte) 255;
+                luma.put(y * width + x, (byte) value);
+            }
+        }
+    }
+
+    @Benchmark
+    public byte[] grayArray() {
+        return NativeBridge.processFrameToGray(rgbaArray, width, height);
+    }
+
+    @Benchmark
+    public byte[] edgesArray() {
+        return NativeBridge.processFrameToEdges(rgbaArray, width, height);
+    }
+
+    @Benchmark
+    public int edgesInto() {
+        return NativeBridge.processFrameToEdgesInto(rgbaArray, rgbaOutArray, width, height);
+    }
+
+    @Benchmark
+    public int grayDirect() {
+        return NativeBridge.processFrameToGrayDirect(rgba, rgbaOut, width, height);
+    }
+
+    @Benchmark
+    public int edgesDirect() {
+        return NativeBridge.processFrameToEdgesDirect(rgba, rgbaOut, width, height);
+    }
+
+    @Benchmark
+    public int grayMono() {
+        return NativeBridge.processFrameToGrayMono(rgba, monoOut, width, height);
+    }
+
+    @Benchmark
+    public int edgesMono() {
+        return NativeBridge.processFrameToEdgesMono(rgba, monoOut, width, height);
+    }
+
+    @Benchmark
+    public int lumaEdges() {
+        return NativeBridge.processLumaToEdges(luma, width, rgbaOut, width, height);
+    }
+
+    @Benchmark
+    public int lumaEdgesMono() {
+        return NativeBridge.processLumaToEdgesMono(luma, width, monoOut, width, height);
+    }
+
+    @Benchmark
+    public int lumaEdgeGraph() {
+        return edgeGraph.run(luma, FilterGraph.INPUT_LUMA, width, monoOut, width, height);
+    }
+
+    @Benchmark
+    public int encodeEdgeFrame() {
+        return NativeBridge.encodeEdgeFrame(edgeMask, null, width, height, encodedEdges);
+    }
+
+    @Benchmark
+    public int decodeEdgeFrame() {
+        return NativeBridge.decodeEdgeFrame(encodedEdges, encodedLength, monoOut);
+    }
+}
@@ -1,22 +1,54 @@
 package org.opencv.android;
 
-import java.text.DecimalFormat;
-
-import org.opencv.core.Core;
+import java.util.Arrays;
 
 import android.graphics.Canvas;
 import android.graphics.Color;
 import android.graphics.Paint;
 import android.util.Log;
 
+/**
+ * Frame-time meter.
+ *
+ * Keeps the intervals between the last WINDOW calls to measure() in a
+ * log-linear (HDR-style) histogram with roughly 6% relative resolution, so
+ * percentiles, max and jank counts reflect a sliding window instead of a
+ * mean that hides single long stalls. measure() does not allocate; the
+ * overlay text is only rebuilt when one of the displayed values changes.
+ */
 public class FpsMeter {
     private static final String TAG               = "FpsMeter";
     private static final int    STEP              = 20;
-    private static final DecimalFormat FPS_FORMAT = new DecimalFormat("0.00");
+    private static final int    WINDOW            = 120;
+
+    // Histogram layout: values below 2^SUB_BUCKET_BITS microseconds get one
+    // bucket each, every following power of two is split into SUB_BUCKETS
+    private static final int    SUB_BUCKET_BITS   = 4;
+    private static final int    SUB_BUCKETS       = 1 << SUB_BUCKET_BITS;
+    private static final int    MAGNITUDES        = 20;     // up to 2^24 us (~16 s)
+    private static final int    BUCKET_COUNT      = SUB_BUCKETS + MAGNITUDES * SUB_BUCKETS;
+
+    private static final double DEFAULT_BUDGET_MS = 1000.0 / 30;
+
+    private final long[]        mIntervalsUs = new long[WINDOW];
+    private final int[]         mBuckets = new int[BUCKET_COUNT];
+    private final StringBuilder mText = new StringBuilder(64);
 
     private int                 mFramesCounter;
-    private double              mFrequency;
+    private int                 mWindowCount;
+    private int                 mWindowHead;
+    private long                mWindowSumUs;
     private long                mprevFrameTime;
+    private long                mBudgetUs = (long) (DEFAULT_BUDGET_MS * 1000);
+    private int                 mWindowJank;
+    private long                mTotalJank;
+
+    // Last values shown, in display units (1/100 fps, 1/10 ms)
+    private long                mShownFps = -1;
+    private long                mShownP99 = -1;
+    private int                 mShownJank = -1;
+    private boolean             mTextDirty = true;
+
     private String              mStrfps;
     Paint                       mPaint;
     boolean                     mIsInitialized = false;
@@ -25,9 +57,15 @@ public class FpsMeter {
 
     public void init() {
         mFramesCounter = 0;
-        mFrequency = Core.getTickFrequency();
-        mprevFrameTime = Core.getTickCount();
+        mWindowCount = 0;
+        mWindowHead = 0;
+        mWindowSumUs = 0;
+        mWindowJank = 0;
+        mTotalJank = 0;
+        Arrays.fill(mBuckets, 0);
+        mprevFrameTime = System.nanoTime();
         mStrfps = "";
+        mTextDirty = true;
 
         mPaint = new Paint();
         mPaint.setColor(Color.BLUE);
@@ -39,29 +77,179 @@ public class FpsMeter {
             init();
             mIsInitialized = true;
         } else {
+            long time = System.nanoTime();
+            record((time - mprevFrameTime) / 1000);
+            mprevFrameTime = time;
+
             mFramesCounter++;
             if (mFramesCounter % STEP == 0) {
-                long time = Core.getTickCount();
-                double fps = STEP * mFrequency / (time - mprevFrameTime);
-                mprevFrameTime = time;
-                if (mWidth != 0 && mHeight != 0)
-                    mStrfps = FPS_FORMAT.format(fps) + " FPS@" + Integer.valueOf(mWidth) + "x" + Integer.valueOf(mHeight);
-                else
-                    mStrfps = FPS_FORMAT.format(fps) + " FPS";
-                Log.i(TAG, mStrfps);
+                updateText();
             }
         }
     }
 
     public void setResolution(int width, int height) {
-        Log.d(TAG, "FpsMeter.setResolution " + Integer.valueOf(mWidth) + "x" + Integer.valueOf(mHeight));
+        Log.d(TAG, "FpsMeter.setResolution " + width + "x" + height);
         mWidth = width;
         mHeight = height;
+        mTextDirty = true;
+    }
+
+    // Frame intervals longer than this count as jank (default: 30 fps budget)
+    public void setFrameBudgetMs(double budgetMs) {
+        mBudgetUs = (long) (budgetMs * 1000);
+        // Re-evaluate the window against the new budget
+        mWindowJank = 0;
+        for (int i = 0; i < mWindowCount; i++) {
+            if (mIntervalsUs[i] > mBudgetUs) mWindowJank++;
+        }
+        mTextDirty = true;
     }
 
     public void draw(Canvas canvas, float offsetx, float offsety) {
-        Log.d(TAG, mStrfps);
         canvas.drawText(mStrfps, offsetx, offsety, mPaint);
     }
 
+    // Mean frames per second over the window, 0 without samples
+    public double getFps() {
+        if (mWindowSumUs == 0) return 0;
+        return mWindowCount * 1e6 / mWindowSumUs;
+    }
+
+    // Frame interval percentile (0..100) over the window, in milliseconds
+    public double getPercentileMs(double percentile) {
+        return percentileUs(percentile) / 1000.0;
+    }
+
+    public double getMaxMs() {
+        long max = 0;
+        for (int i = 0; i < mWindowCount; i++) {
+            max = Math.max(max, mIntervalsUs[i]);
+        }
+        return max / 1000.0;
+    }
+
+    // Intervals over budget within the current window
+    public int getJankCount() {
+        return mWindowJank;
+    }
+
+    // Intervals over budget since init()
+    public long getTotalJankCount() {
+        return mTotalJank;
+    }
+
+    public int getHistogramBucketCount() {
+        return BUCKET_COUNT;
+    }
+
+    /**
+     * Copies the non-empty histogram buckets of the current window into the
+     * given arrays (each at least getHistogramBucketCount() long): the upper
+     * bound of each bucket in nanoseconds and the number of intervals in it.
+     * Returns the number of buckets written.
+     */
+    public int exportHistogram(long[] upperBoundsNs, long[] counts) {
+        int written = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            if (mBuckets[i] == 0) continue;
+            upperBoundsNs[written] = bucketUpperBoundUs(i) * 1000;
+            counts[written] = mBuckets[i];
+            written++;
+        }
+        return written;
+    }
+
+    private void record(long intervalUs) {
+        if (mWindowCount == WINDOW) {
+            // Evict the oldest interval from the sliding window
+            long evicted = mIntervalsUs[mWindowHead];
+            mBuckets[bucketIndex(evicted)]--;
+            mWindowSumUs -= evicted;
+            if (evicted > mBudgetUs) mWindowJank--;
+        } else {
+            mWindowCount++;
+        }
+
+        mIntervalsUs[mWindowHead] = intervalUs;
+        mWindowHead = (mWindowHead + 1) % WINDOW;
+
+        mBuckets[bucketIndex(intervalUs)]++;
+        mWindowSumUs += intervalUs;
+        if (intervalUs > mBudgetUs) {
+            mWindowJank++;
+            mTotalJank++;
+        }
+    }
+
+    private long percentileUs(double percentile) {
+        if (mWindowCount == 0) return 0;
+
+        long target = Math.max(1, (long) Math.ceil(percentile / 100.0 * mWindowCount));
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += mBuckets[i];
+            if (seen >= target) return bucketUpperBoundUs(i);
+        }
+        return bucketUpperBoundUs(BUCKET_COUNT - 1);
+    }
+
+    private static int bucketIndex(long valueUs) {
+        if (valueUs < SUB_BUCKETS) return (int) Math.max(0, valueUs);
+
+        int magnitude = 63 - Long.numberOfLeadingZeros(valueUs);
+        int shift = magnitude - SUB_BUCKET_BITS;
+        if (shift >= MAGNITUDES) return BUCKET_COUNT - 1;
+
+        int sub = (int) (valueUs >> shift) & (SUB_BUCKETS - 1);
+        return SUB_BUCKETS + shift * SUB_BUCKETS + sub;
+    }
+
+    // Exclusive upper bound of a bucket, in microseconds
+    private static long bucketUpperBoundUs(int index) {
+        if (index < SUB_BUCKETS) return index + 1;
+
+        int shift = (index - SUB_BUCKETS) / SUB_BUCKETS;
+        int sub = (index - SUB_BUCKETS) % SUB_BUCKETS;
+        return ((long) (SUB_BUCKETS + sub + 1)) << shift;
+    }
+
+    private void updateText() {
+        long fps = Math.round(getFps() * 100);
+        long p99 = Math.round(getPercentileMs(99) * 10);
+        int jank = mWindowJank;
+
+        if (!mTextDirty && fps == mShownFps && p99 == mShownP99 && jank == mShownJank) {
+            return;
+        }
+        mShownFps = fps;
+        mShownP99 = p99;
+        mShownJank = jank;
+        mTextDirty = false;
+
+        mText.setLength(0);
+        appendFixed(mText, fps, 2).append(" FPS");
+        if (mWidth != 0 && mHeight != 0) {
+            mText.append('@').append(mWidth).append('x').append(mHeight);
+        }
+        mText.append(" p99 ");
+        appendFixed(mText, p99, 1).append("ms jank ").append(jank);
+
+        mStrfps = mText.toString();
+        Log.i(TAG, mStrfps);
+    }
+
+    // Appends value / 10^decimals with exactly `decimals` fraction digits
+    private static StringBuilder appendFixed(StringBuilder sb, long value, int decimals) {
+        long scale = 1;
+        for (int i = 0; i < decimals; i++) scale *= 10;
+
+        sb.append(value / scale).append('.');
+        long fraction = value % scale;
+        for (long s = scale / 10; s > 1 && fraction < s; s /= 10) {
+            sb.append('0');
+        }
+        return sb.append(fraction);
+    }
+
 }
@@ -57,6 +57,11 @@ public class JavaCamera2View extends CameraBridgeViewBase {
     private HandlerThread mBackgroundThread;
     protected Handler mBackgroundHandler;
 
+    // Reused for every image of a session, so their Mats are allocated once.
+    // Only touched on the background thread, and released once it has stopped.
+    private JavaCamera2Frame mFrame;
+    private RotatedCameraFrame mRotatedFrame;
+
     public JavaCamera2View(Context context, int cameraId) {
         super(context, cameraId);
     }
@@ -214,10 +219,14 @@ public class JavaCamera2View extends CameraBridgeViewBase {
                     assert (planes.length == 3);
                     assert (image.getFormat() == mPreviewFormat);
 
-                    RotatedCameraFrame tempFrame = new RotatedCameraFrame(new JavaCamera2Frame(image), mFrameRotation);
-                    deliverAndDrawFrame(tempFrame);
-                    tempFrame.mFrame.release();
-                    tempFrame.release();
+                    if (mFrame == null) {
+                        mFrame = new JavaCamera2Frame();
+                        mRotatedFrame = new RotatedCameraFrame(mFrame, mFrameRotation);
+                    }
+                    mFrame.setImage(image);
+                    deliverAndDrawFrame(mRotatedFrame);
+                    // Drops the Mat wrapping the image before its buffers go back
+                    mFrame.setImage(null);
                     image.close();
                 }
             }, mBackgroundHandler);
@@ -252,6 +261,12 @@ public class JavaCamera2View extends CameraBridgeViewBase {
                 mImageReader.close();
                 mImageReader = null;
             }
+            if (null != mFrame) {
+                mRotatedFrame.release();
+                mFrame.release();
+                mFrame = null;
+                mRotatedFrame = null;
+            }
         }
         Log.i(LOGTAG, "camera closed!");
     }
@@ -358,9 +373,11 @@ public class JavaCamera2View extends CameraBridgeViewBase {
             int w = mImage.getWidth();
             int h = mImage.getHeight();
             assert(planes[0].getPixelStride() == 1);
-            ByteBuffer y_plane = planes[0].getBuffer();
-            int y_plane_step = planes[0].getRowStride();
-            mGray = new Mat(h, w, CvType.CV_8UC1, y_plane, y_plane_step);
+            if (mGray == null) {
+                ByteBuffer y_plane = planes[0].getBuffer();
+                int y_plane_step = planes[0].getRowStride();
+                mGray = new Mat(h, w, CvType.CV_8UC1, y_plane, y_plane_step);
+            }
             return mGray;
         }
 
@@ -381,20 +398,24 @@ public class JavaCamera2View extends CameraBridgeViewBase {
                 int uv_plane1_step = planes[1].getRowStride();
                 ByteBuffer uv_plane2 = planes[2].getBuffer();
                 int uv_plane2_step = planes[2].getRowStride();
-                Mat y_mat = new Mat(h, w, CvType.CV_8UC1, y_plane, y_plane_step);
-                Mat uv_mat1 = new Mat(h / 2, w / 2, CvType.CV_8UC2, uv_plane1, uv_plane1_step);
-                Mat uv_mat2 = new Mat(h / 2, w / 2, CvType.CV_8UC2, uv_plane2, uv_plane2_step);
-                long addr_diff = uv_mat2.dataAddr() - uv_mat1.dataAddr();
-                if (addr_diff > 0) {
-                    assert(addr_diff == 1);
-                    Imgproc.cvtColorTwoPlane(y_mat, uv_mat1, mRgba, Imgproc.COLOR_YUV2RGBA_NV12);
-                } else {
-                    assert(addr_diff == -1);
-                    Imgproc.cvtColorTwoPlane(y_mat, uv_mat2, mRgba, Imgproc.COLOR_YUV2RGBA_NV21);
+                try (Mat y_mat = new Mat(h, w, CvType.CV_8UC1, y_plane, y_plane_step);
+                     Mat uv_mat1 = new Mat(h / 2, w / 2, CvType.CV_8UC2, uv_plane1, uv_plane1_step);
+                     Mat uv_mat2 = new Mat(h / 2, w / 2, CvType.CV_8UC2, uv_plane2, uv_plane2_step)) {
+                    long addr_diff = uv_mat2.dataAddr() - uv_mat1.dataAddr();
+                    if (addr_diff > 0) {
+                        assert(addr_diff == 1);
+                        Imgproc.cvtColorTwoPlane(y_mat, uv_mat1, mRgba, Imgproc.COLOR_YUV2RGBA_NV12);
+                    } else {
+                        assert(addr_diff == -1);
+                        Imgproc.cvtColorTwoPlane(y_mat, uv_mat2, mRgba, Imgproc.COLOR_YUV2RGBA_NV21);
+                    }
                 }
                 return mRgba;
             } else { // Chroma channels are not interleaved
-                byte[] yuv_bytes = new byte[w*(h+h/2)];
+                if (mYuvBytes == null || mYuvBytes.length != w*(h+h/2)) {
+                    mYuvBytes = new byte[w*(h+h/2)];
+                }
+                byte[] yuv_bytes = mYuvBytes;
                 ByteBuffer y_plane = planes[0].getBuffer();
                 ByteBuffer u_plane = planes[1].getBuffer();
                 ByteBuffer v_plane = planes[2].getBuffer();
@@ -444,29 +465,43 @@ public class JavaCamera2View extends CameraBridgeViewBase {
                     }
                 }
 
-                Mat yuv_mat = new Mat(h+h/2, w, CvType.CV_8UC1);
-                yuv_mat.put(0, 0, yuv_bytes);
-                Imgproc.cvtColor(yuv_mat, mRgba, Imgproc.COLOR_YUV2RGBA_I420, 4);
+                mYuv.create(h+h/2, w, CvType.CV_8UC1);
+                mYuv.put(0, 0, yuv_bytes);
+                Imgproc.cvtColor(mYuv, mRgba, Imgproc.COLOR_YUV2RGBA_I420, 4);
                 return mRgba;
             }
         }
 
 
-        public JavaCamera2Frame(Image image) {
+        public JavaCamera2Frame() {
             super();
-            mImage = image;
             mRgba = new Mat();
-            mGray = new Mat();
+            mYuv = new Mat();
+        }
+
+        // Switches to the next image. The Mat gray() returned for the previous
+        // one wraps its buffers, so it is closed here rather than left to GC.
+        void setImage(Image image) {
+            if (mGray != null) {
+                mGray.close();
+                mGray = null;
+            }
+            mImage = image;
         }
 
         @Override
         public void release() {
-            mRgba.release();
-            mGray.release();
+            setImage(null);
+            mRgba.close();
+            mYuv.close();
+            mYuvBytes = null;
         }
 
         private Image mImage;
-        private Mat mRgba;
+        private final Mat mRgba;
+        // Packed I420 copy, for images with planar chroma
+        private final Mat mYuv;
+        private byte[] mYuvBytes;
         private Mat mGray;
     };
 }
@@ -4,14 +4,23 @@ import java.nio.ByteBuffer;
 
 // C++: class Mat
 //javadoc: Mat
-public class Mat {
+//
+// A Mat owns a native cv::Mat header. close() frees it right away and should
+// be called (or try-with-resources used) for every Mat created per frame;
+// release() only drops the pixel data and leaves the Mat usable. A Mat that is
+// never closed is freed after it becomes unreachable, see MatCleaner, and
+// setLeakTracking(true) logs where such Mats were created.
+public class Mat implements AutoCloseable {
 
     public final long nativeObj;
 
+    private final MatCleaner.Ref cleanup;
+
     public Mat(long addr) {
         if (addr == 0)
             throw new UnsupportedOperationException("Native object address is NULL");
         nativeObj = addr;
+        cleanup = MatCleaner.register(this, addr);
     }
 
     //
@@ -20,7 +29,7 @@ public class Mat {
 
     // javadoc: Mat::Mat()
     public Mat() {
-        nativeObj = n_Mat();
+        this(n_Mat());
     }
 
     //
@@ -29,7 +38,7 @@ public class Mat {
 
     // javadoc: Mat::Mat(rows, cols, type)
     public Mat(int rows, int cols, int type) {
-        nativeObj = n_Mat(rows, cols, type);
+        this(n_Mat(rows, cols, type));
     }
 
     //
@@ -38,7 +47,7 @@ public class Mat {
 
     // javadoc: Mat::Mat(rows, cols, type, data)
     public Mat(int rows, int cols, int type, ByteBuffer data) {
-        nativeObj = n_Mat(rows, cols, type, data);
+        this(n_Mat(rows, cols, type, data));
     }
 
     //
@@ -47,7 +56,7 @@ public class Mat {
 
     // javadoc: Mat::Mat(rows, cols, type, data, step)
     public Mat(int rows, int cols, int type, ByteBuffer data, long step) {
-        nativeObj = n_Mat(rows, cols, type, data, step);
+        this(n_Mat(rows, cols, type, data, step));
     }
 
     //
@@ -56,7 +65,7 @@ public class Mat {
 
     // javadoc: Mat::Mat(size, type)
     public Mat(Size size, int type) {
-        nativeObj = n_Mat(size.width, size.height, type);
+        this(n_Mat(size.width, size.height, type));
     }
 
     //
@@ -65,7 +74,7 @@ public class Mat {
 
     // javadoc: Mat::Mat(sizes, type)
     public Mat(int[] sizes, int type) {
-        nativeObj = n_Mat(sizes.length, sizes, type);
+        this(n_Mat(sizes.length, sizes, type));
     }
 
     //
@@ -74,7 +83,7 @@ public class Mat {
 
     // javadoc: Mat::Mat(rows, cols, type, s)
     public Mat(int rows, int cols, int type, Scalar s) {
-        nativeObj = n_Mat(rows, cols, type, s.val[0], s.val[1], s.val[2], s.val[3]);
+        this(n_Mat(rows, cols, type, s.val[0], s.val[1], s.val[2], s.val[3]));
     }
 
     //
@@ -83,7 +92,7 @@ public class Mat {
 
     // javadoc: Mat::Mat(size, type, s)
     public Mat(Size size, int type, Scalar s) {
-        nativeObj = n_Mat(size.width, size.height, type, s.val[0], s.val[1], s.val[2], s.val[3]);
+        this(n_Mat(size.width, size.height, type, s.val[0], s.val[1], s.val[2], s.val[3]));
     }
 
     //
@@ -92,7 +101,7 @@ public class Mat {
 
     // javadoc: Mat::Mat(sizes, type, s)
     public Mat(int[] sizes, int type, Scalar s) {
-        nativeObj = n_Mat(sizes.length, sizes, type, s.val[0], s.val[1], s.val[2], s.val[3]);
+        this(n_Mat(sizes.length, sizes, type, s.val[0], s.val[1], s.val[2], s.val[3]));
     }
 
     //
@@ -101,12 +110,12 @@ public class Mat {
 
     // javadoc: Mat::Mat(m, rowRange, colRange)
     public Mat(Mat m, Range rowRange, Range colRange) {
-        nativeObj = n_Mat(m.nativeObj, rowRange.start, rowRange.end, colRange.start, colRange.end);
+        this(n_Mat(m.nativeObj, rowRange.start, rowRange.end, colRange.start, colRange.end));
     }
 
     // javadoc: Mat::Mat(m, rowRange)
     public Mat(Mat m, Range rowRange) {
-        nativeObj = n_Mat(m.nativeObj, rowRange.start, rowRange.end);
+        this(n_Mat(m.nativeObj, rowRange.start, rowRange.end));
     }
 
     //
@@ -115,7 +124,7 @@ public class Mat {
 
     // javadoc: Mat::Mat(m, ranges)
     public Mat(Mat m, Range[] ranges) {
-        nativeObj = n_Mat(m.nativeObj, ranges);
+        this(n_Mat(m.nativeObj, ranges));
     }
 
     //
@@ -124,7 +133,7 @@ public class Mat {
 
     // javadoc: Mat::Mat(m, roi)
     public Mat(Mat m, Rect roi) {
-        nativeObj = n_Mat(m.nativeObj, roi.y, roi.y + roi.height, roi.x, roi.x + roi.width);
+        this(n_Mat(m.nativeObj, roi.y, roi.y + roi.height, roi.x, roi.x + roi.width));
     }
 
     //
@@ -754,10 +763,23 @@ public class Mat {
         return new Mat(n_zeros(sizes.length, sizes, type));
     }
 
+    // Frees the native Mat. The Mat must not be used afterwards; closing it
+    // again does nothing.
     @Override
-    protected void finalize() throws Throwable {
-        n_delete(nativeObj);
-        super.finalize();
+    public void close() {
+        cleanup.clean();
+    }
+
+    // When enabled, Mats created from now on remember their allocation stack,
+    // and any of them that is garbage collected without close() is logged
+    // with it as a warning. Costs a stack trace per Mat; for debugging only.
+    public static void setLeakTracking(boolean enabled) {
+        MatCleaner.trackLeaks = enabled;
+    }
+
+    // Mats whose native memory has not been freed yet, closed or collected
+    public static int getLiveCount() {
+        return MatCleaner.liveCount();
     }
 
     // javadoc:Mat::toString()
@@ -1834,8 +1856,8 @@ public class Mat {
     // C++: static Mat Mat::zeros(int ndims, const int* sizes, int type)
     private static native long n_zeros(int ndims, int[] sizes, int type);
 
-    // native support for java finalize()
-    private static native void n_delete(long nativeObj);
+    // native support for close() and MatCleaner
+    static native void n_delete(long nativeObj);
 
     private static native int nPutD(long self, int row, int col, int count, double[] data);
 
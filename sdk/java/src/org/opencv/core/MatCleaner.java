@@ -0,0 +1,96 @@
+package org.opencv.core;
+
+import java.lang.ref.PhantomReference;
+import java.lang.ref.ReferenceQueue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+// Frees the native cv::Mat of a Mat that was never closed, once the Mat is
+// unreachable. This replaces Mat.finalize(): a finalizable object survives an
+// extra GC cycle and is freed only when the single finalizer thread gets to
+// it, so in a camera loop native frames piled up behind it. Phantom
+// references are cleared as soon as the GC finds the Mat unreachable and are
+// freed by a dedicated thread, and by allocating threads in register().
+//
+// java.lang.ref.Cleaner does the same but needs API 33.
+final class MatCleaner {
+
+    private static final Logger LOG = Logger.getLogger(Mat.class.getName());
+
+    private static final ReferenceQueue<Mat> queue = new ReferenceQueue<>();
+
+    // Keeps the references themselves reachable until their Mat is freed
+    private static final Set<Ref> live = ConcurrentHashMap.newKeySet();
+
+    static volatile boolean trackLeaks;
+
+    static {
+        Thread thread = new Thread(MatCleaner::run, "OpenCV Mat cleaner");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private MatCleaner() {
+    }
+
+    static final class Ref extends PhantomReference<Mat> {
+        private final long addr;
+        // Where the Mat was created, only while leak tracking is on
+        private final Throwable allocation;
+        private final AtomicBoolean freed = new AtomicBoolean();
+
+        private Ref(Mat mat, long addr, Throwable allocation) {
+            super(mat, queue);
+            this.addr = addr;
+            this.allocation = allocation;
+        }
+
+        // Frees the native Mat the first time it is called; close() and the
+        // cleaner may both get here
+        void clean() {
+            if (freed.compareAndSet(false, true)) {
+                clear();
+                live.remove(this);
+                Mat.n_delete(addr);
+            }
+        }
+    }
+
+    static Ref register(Mat mat, long addr) {
+        // Free whatever the cleaner thread has not got to yet, so a thread
+        // allocating frames faster than it runs also pays for their release
+        Ref pending;
+        while ((pending = (Ref) queue.poll()) != null) {
+            reclaim(pending);
+        }
+
+        Ref ref = new Ref(mat, addr, trackLeaks ? new Throwable("Mat allocated here") : null);
+        live.add(ref);
+        return ref;
+    }
+
+    static int liveCount() {
+        return live.size();
+    }
+
+    private static void reclaim(Ref ref) {
+        if (ref.allocation != null && !ref.freed.get()) {
+            LOG.log(Level.WARNING, "Mat 0x" + Long.toHexString(ref.addr)
+                    + " was garbage collected without close()", ref.allocation);
+        }
+        ref.clean();
+    }
+
+    private static void run() {
+        while (true) {
+            try {
+                reclaim((Ref) queue.remove());
+            } catch (InterruptedException e) {
+                // Daemon thread; keep draining
+            }
+        }
+    }
+}
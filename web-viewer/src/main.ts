@@ -0,0 +1,142 @@
+// Viewer for the app's EdgeStreamServer. Message layout as in
+// SparseEdgeFrame.java / edge_codec.hpp, 8 byte header (little-endian):
+// u8 'E', u8 encoding, u16 width, u16 height, u16 sequence, then a
+// bit-packed mask (least significant bit first), LEB128 run lengths
+// alternating between 0 and 255 pixels starting with 0, or raw gray bytes.
+// The server never sends delta frames.
+
+const MAGIC = 0x45; // 'E'
+const ENCODING_BITMASK = 0;
+const ENCODING_RLE = 1;
+const ENCODING_GRAY = 3;
+const HEADER_SIZE = 8;
+const SEQUENCE_RANGE = 0x10000;
+
+interface Frame {
+  width: number;
+  height: number;
+  sequence: number;
+  pixels: Uint8Array;
+}
+
+function decode(message: ArrayBuffer): Frame {
+  const view = new DataView(message);
+  const bytes = new Uint8Array(message);
+  if (bytes.length < HEADER_SIZE || view.getUint8(0) !== MAGIC) {
+    throw new Error("not an edge frame");
+  }
+  const encoding = view.getUint8(1);
+  const width = view.getUint16(2, true);
+  const height = view.getUint16(4, true);
+  const sequence = view.getUint16(6, true);
+  const count = width * height;
+  const pixels = new Uint8Array(count);
+
+  if (encoding === ENCODING_GRAY) {
+    pixels.set(bytes.subarray(HEADER_SIZE, HEADER_SIZE + count));
+  } else if (encoding === ENCODING_BITMASK) {
+    for (let i = 0; i < count; i++) {
+      if ((bytes[HEADER_SIZE + (i >>> 3)] >>> (i & 7)) & 1) {
+        pixels[i] = 255;
+      }
+    }
+  } else if (encoding === ENCODING_RLE) {
+    let position = HEADER_SIZE;
+    let pixel = 0;
+    let on = false;
+    while (position < bytes.length) {
+      let run = 0;
+      let shift = 0;
+      let b: number;
+      do {
+        b = bytes[position++];
+        run |= (b & 0x7f) << shift;
+        shift += 7;
+      } while (b & 0x80);
+      if (on) {
+        pixels.fill(255, pixel, pixel + run);
+      }
+      pixel += run;
+      on = !on;
+    }
+    if (pixel !== count) {
+      throw new Error(`runs cover ${pixel} of ${count} pixels`);
+    }
+  } else {
+    throw new Error(`unsupported encoding ${encoding}`);
+  }
+  return { width, height, sequence, pixels };
+}
+
+const canvas = document.getElementById("frame") as HTMLCanvasElement;
+const context = canvas.getContext("2d")!;
+const stats = document.getElementById("stats")!;
+const urlInput = document.getElementById("url") as HTMLInputElement;
+const connectButton = document.getElementById("connect")!;
+
+let socket: WebSocket | null = null;
+let image: ImageData | null = null;
+
+// Stats over the last second
+let windowStart = performance.now();
+let framesInWindow = 0;
+let bytesInWindow = 0;
+let lastSequence = -1;
+let skipped = 0;
+
+function draw(frame: Frame): void {
+  if (!image || image.width !== frame.width || image.height !== frame.height) {
+    canvas.width = frame.width;
+    canvas.height = frame.height;
+    image = context.createImageData(frame.width, frame.height);
+    image.data.fill(255); // alpha
+  }
+  const rgba = image.data;
+  const pixels = frame.pixels;
+  for (let i = 0, j = 0; i < pixels.length; i++, j += 4) {
+    rgba[j] = rgba[j + 1] = rgba[j + 2] = pixels[i];
+  }
+  context.putImageData(image, 0, 0);
+}
+
+function onMessage(event: MessageEvent<ArrayBuffer>): void {
+  const frame = decode(event.data);
+  draw(frame);
+
+  // The server skips frames for slow viewers; gaps in the (wrapping)
+  // sequence show it
+  if (lastSequence >= 0) {
+    skipped += (frame.sequence - lastSequence - 1 + SEQUENCE_RANGE) % SEQUENCE_RANGE;
+  }
+  lastSequence = frame.sequence;
+  framesInWindow++;
+  bytesInWindow += event.data.byteLength;
+
+  const now = performance.now();
+  if (now - windowStart >= 1000) {
+    const seconds = (now - windowStart) / 1000;
+    stats.textContent = `${frame.width}x${frame.height}`
+      + ` ${(framesInWindow / seconds).toFixed(1)} fps`
+      + ` ${(bytesInWindow / seconds / 1024).toFixed(0)} KiB/s`
+      + ` skipped ${skipped}`;
+    windowStart = now;
+    framesInWindow = 0;
+    bytesInWindow = 0;
+  }
+}
+
+function connect(): void {
+  if (socket) {
+    socket.close();
+  }
+  lastSequence = -1;
+  skipped = 0;
+  const ws = new WebSocket(urlInput.value);
+  ws.binaryType = "arraybuffer";
+  ws.onopen = () => (stats.textContent = "connected, waiting for frames");
+  ws.onmessage = onMessage;
+  ws.onclose = () => (stats.textContent = "disconnected");
+  socket = ws;
+}
+
+connectButton.addEventListener("click", connect);